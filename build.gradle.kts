@@ -1,6 +1,7 @@
 plugins {
     id("java-library")
     id("maven-publish")
+    alias(libs.plugins.jmh)
 }
 
 group = "dev.lightdream"
@@ -52,6 +53,14 @@ tasks.test {
     }
 }
 
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    // Reports the allocation rate of every benchmark next to its time
+    profilers.add("gc")
+    // build/results/jmh/results.json, compared against a previous run to catch regressions
+    resultFormat.set("JSON")
+}
+
 configurations.all {
     resolutionStrategy.cacheDynamicVersionsFor(10, "seconds")
 }
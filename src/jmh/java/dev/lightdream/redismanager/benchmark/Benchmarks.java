@@ -0,0 +1,47 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.filemanager.FileManager;
+import dev.lightdream.filemanager.GsonSettings;
+import dev.lightdream.logger.Printer;
+import dev.lightdream.messagebuilder.MessageBuilderManager;
+import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.reflections.Reflections;
+import org.reflections.scanners.Scanners;
+import org.reflections.util.ConfigurationBuilder;
+
+public final class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * @return a local only manager that registers the handlers of the benchmarks
+     */
+    public static RedisManager localManager() {
+        GsonSettings gsonSettings = new GsonSettings();
+
+        Reflections reflections = new Reflections(
+                new ConfigurationBuilder()
+                        .forPackages("dev.lightdream.redismanager.benchmark")
+                        .setScanners(Scanners.MethodsAnnotated, Scanners.TypesAnnotated, Scanners.SubTypes)
+        );
+
+        Printer.builder()
+                .debugToConsole(false)
+                .build();
+
+        FileManager.builder()
+                .gsonSettings(gsonSettings)
+                .build();
+
+        MessageBuilderManager.builder().build();
+
+        return RedisManager.builder()
+                .gsonSettings(gsonSettings)
+                .redisConfig(new RedisConfig())
+                .reflections(reflections)
+                .localOnly(true)
+                .build();
+    }
+}
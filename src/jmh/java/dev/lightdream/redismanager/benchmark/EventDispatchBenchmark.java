@@ -0,0 +1,86 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.redismanager.annotation.RedisEventHandler;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisEventManager;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fires an event to a growing number of registered handlers through {@link RedisEventManager#fire(RedisEvent)}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventDispatchBenchmark {
+
+    @Param({"1", "50", "500"})
+    public int handlers;
+
+    private RedisManager manager;
+    private RedisEventManager eventManager;
+    private final List<Handler> registered = new ArrayList<>();
+    private DispatchEvent event;
+
+    @Setup
+    public void setup() {
+        manager = Benchmarks.localManager();
+        eventManager = manager.redisEventManager();
+        for (int i = 0; i < handlers; i++) {
+            Handler handler = new Handler();
+            eventManager.register(handler);
+            registered.add(handler);
+        }
+        event = new DispatchEvent();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (Handler handler : registered) {
+            eventManager.unregister(handler);
+        }
+        registered.clear();
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public DispatchEvent fire() {
+        eventManager.fire(event);
+        return event;
+    }
+
+    public static class Handler {
+
+        private long counter;
+
+        @RedisEventHandler
+        public void onEvent(DispatchEvent event) {
+            counter += event.getId();
+        }
+    }
+
+    public static class DispatchEvent extends RedisEvent<Boolean> {
+
+        public DispatchEvent() {
+            super(DispatchEvent.class.getName(), 1, "benchmark#origin", "benchmark#target");
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisEventInvoker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of invoking a handler through the generated invokers against the reflective path that was used
+ * before and a plain virtual call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventInvokerBenchmark {
+
+    private Handler handler;
+    private BenchmarkEvent event;
+    private Method method;
+    private RedisEventInvoker lambdaInvoker;
+    private RedisEventInvoker methodHandleInvoker;
+
+    @Setup
+    public void setup() throws Throwable {
+        handler = new Handler();
+        event = new BenchmarkEvent();
+        method = Handler.class.getMethod("onEvent", BenchmarkEvent.class);
+        method.setAccessible(true);
+        lambdaInvoker = RedisEventInvoker.lambda(method);
+        methodHandleInvoker = RedisEventInvoker.methodHandle(method);
+    }
+
+    @Benchmark
+    public long direct() {
+        handler.onEvent(event);
+        return handler.counter;
+    }
+
+    @Benchmark
+    public long reflective() throws Exception {
+        method.invoke(handler, BenchmarkEvent.class.cast(event));
+        return handler.counter;
+    }
+
+    @Benchmark
+    public long lambda() throws Throwable {
+        lambdaInvoker.invoke(handler, event);
+        return handler.counter;
+    }
+
+    @Benchmark
+    public long methodHandle() throws Throwable {
+        methodHandleInvoker.invoke(handler, event);
+        return handler.counter;
+    }
+
+    public static class Handler {
+
+        private long counter;
+
+        public void onEvent(BenchmarkEvent event) {
+            counter += event.getId();
+        }
+    }
+
+    public static class BenchmarkEvent extends RedisEvent<Boolean> {
+
+        public BenchmarkEvent() {
+            // Bypasses the default constructor, which needs a running RedisManager to resolve the target
+            super(BenchmarkEvent.class.getName(), 1, "benchmark#origin", "benchmark#target");
+        }
+    }
+}
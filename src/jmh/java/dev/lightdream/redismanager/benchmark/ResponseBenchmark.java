@@ -0,0 +1,113 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.redismanager.codec.RedisCodec;
+import dev.lightdream.redismanager.dto.RedisResponse;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import dev.lightdream.redismanager.type_adapter.RedisEventTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds responses the way a handler does and decodes received responses into the waiting {@link RedisResponse}, for
+ * an integer response and a response of 100 strings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+
+    private static final long INT_REQUEST_ID = 1;
+    private static final long LIST_REQUEST_ID = 2;
+
+    private RedisManager manager;
+    private RedisCodec codec;
+    private IntRequest intRequest;
+    private ListRequest listRequest;
+    private List<String> list;
+    private byte[] intPayload;
+    private byte[] listPayload;
+
+    @Setup
+    public void setup() {
+        manager = Benchmarks.localManager();
+        codec = manager.codec();
+
+        intRequest = new IntRequest(INT_REQUEST_ID);
+        listRequest = new ListRequest(LIST_REQUEST_ID);
+        list = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            list.add("entry-" + i);
+        }
+
+        intPayload = codec.encode(new ResponseEvent(intRequest, 42));
+        listPayload = codec.encode(new ResponseEvent(listRequest, list));
+
+        // Responses are only decoded for the requests that wait for them
+        manager.awaitingResponses().put(INT_REQUEST_ID,
+                new RedisResponse<>(INT_REQUEST_ID, RedisEventTypes.getResponseType(IntRequest.class)));
+        manager.awaitingResponses().put(LIST_REQUEST_ID,
+                new RedisResponse<>(LIST_REQUEST_ID, RedisEventTypes.getResponseType(ListRequest.class)));
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public ResponseEvent construct() {
+        return new ResponseEvent(intRequest, 42);
+    }
+
+    @Benchmark
+    public ResponseEvent constructList() {
+        return new ResponseEvent(listRequest, list);
+    }
+
+    @Benchmark
+    public Integer decodeAndRespond() {
+        RedisResponse<Integer> response = new RedisResponse<>(INT_REQUEST_ID, Integer.class);
+        response.respond((ResponseEvent) codec.decode(intPayload));
+        return response.getResponse();
+    }
+
+    @Benchmark
+    public List<String> decodeAndRespondList() {
+        RedisResponse<List<String>> response = new RedisResponse<>(LIST_REQUEST_ID,
+                RedisEventTypes.getResponseType(ListRequest.class));
+        response.respond((ResponseEvent) codec.decode(listPayload));
+        return response.getResponse();
+    }
+
+    public static class IntRequest extends RedisEvent<Integer> {
+
+        public IntRequest(long id) {
+            super(IntRequest.class.getName(), id, "benchmark#origin", "benchmark#target");
+        }
+    }
+
+    public static class ListRequest extends RedisEvent<List<String>> {
+
+        public ListRequest(long id) {
+            super(ListRequest.class.getName(), id, "benchmark#origin", "benchmark#target");
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.redismanager.annotation.RedisEventHandler;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a request to a handler of the same node and waits for its response, in local only mode. Covers the
+ * correlation, the timeout scheduling, the dispatch and the response without the transport.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private RedisManager manager;
+    private String redisID;
+
+    @Setup
+    public void setup() {
+        manager = Benchmarks.localManager();
+        redisID = manager.redisConfig().getRedisID();
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public Integer sendAndWait() {
+        return new IncrementEvent(redisID, 1).sendAndWait().getResponse();
+    }
+
+    @Benchmark
+    public Integer sendAsync() throws ExecutionException, InterruptedException {
+        return new IncrementEvent(redisID, 1).sendAsync().get();
+    }
+
+    public static class IncrementEvent extends RedisEvent<Integer> {
+
+        private final int value;
+
+        public IncrementEvent(String redisID, int value) {
+            super(redisID);
+            this.value = value;
+        }
+    }
+
+    public static class Handler {
+
+        @RedisEventHandler(autoRegister = true)
+        public void onIncrement(IncrementEvent event) {
+            event.respond(event.value + 1);
+        }
+    }
+}
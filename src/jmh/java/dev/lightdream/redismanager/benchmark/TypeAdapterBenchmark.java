@@ -0,0 +1,96 @@
+package dev.lightdream.redismanager.benchmark;
+
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import dev.lightdream.redismanager.type_adapter.RedisEventTypeAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes events through the {@link RedisEventTypeAdapter}, for an event of two fields and for an event
+ * holding a list of 1000 strings and a map of 100 entries.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TypeAdapterBenchmark {
+
+    @Param({"SMALL", "LARGE"})
+    public String size;
+
+    private RedisManager manager;
+    private RedisEventTypeAdapter adapter;
+    private RedisEvent<?> event;
+    private String json;
+
+    @Setup
+    public void setup() {
+        manager = Benchmarks.localManager();
+        adapter = manager.redisEventTypeAdapter();
+
+        event = size.equals("SMALL") ? new SmallEvent(1, 2) : new LargeEvent(1000, 100);
+        json = adapter.gson().toJson(event);
+    }
+
+    @TearDown
+    public void tearDown() {
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public String encode() {
+        return adapter.gson().toJson(event);
+    }
+
+    @Benchmark
+    public RedisEvent<?> decode() {
+        return adapter.deserialize(json);
+    }
+
+    public static class SmallEvent extends RedisEvent<Integer> {
+
+        private int a;
+        private int b;
+
+        public SmallEvent(int a, int b) {
+            super(SmallEvent.class.getName(), 1, "benchmark#origin", "benchmark#target");
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    public static class LargeEvent extends RedisEvent<List<String>> {
+
+        private final List<String> items = new ArrayList<>();
+        private final Map<String, Integer> scores = new HashMap<>();
+
+        public LargeEvent(int items, int scores) {
+            super(LargeEvent.class.getName(), 1, "benchmark#origin", "benchmark#target");
+            for (int i = 0; i < items; i++) {
+                this.items.add("item-" + i);
+            }
+            for (int i = 0; i < scores; i++) {
+                this.scores.put("player-" + i, i);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dev.lightdream.redismanager.manager;
+
+import dev.lightdream.redismanager.benchmark.Benchmarks;
+import dev.lightdream.redismanager.dto.RedisGatherResponse;
+import dev.lightdream.redismanager.dto.RedisResponse;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Matches responses to the requests waiting for them through {@link RedisManager#getResponse(ResponseEvent)}, with a
+ * growing number of requests in flight. In this package to reach the method. A single response removes its request,
+ * which is put back to keep the number of requests in flight constant, a gathered one leaves it in place.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CorrelationBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int inFlight;
+
+    @Param({"false", "true"})
+    public boolean gather;
+
+    private RedisManager manager;
+    private Map<Long, RedisResponse<?>> awaitingResponses;
+    private ResponseEvent[] responses;
+    private long next;
+
+    @Setup
+    public void setup() {
+        manager = Benchmarks.localManager();
+        awaitingResponses = manager.awaitingResponses();
+        responses = new ResponseEvent[inFlight];
+        for (int i = 0; i < inFlight; i++) {
+            long id = i + 1;
+            awaitingResponses.put(id, gather ?
+                    new RedisGatherResponse<>(id, Integer.class, 0, Collectors.counting()) :
+                    new RedisResponse<>(id, Integer.class));
+            responses[i] = new ResponseEvent(id, "benchmark#origin", "benchmark#target", null, 1);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        awaitingResponses.clear();
+        manager.shutdown();
+    }
+
+    @Benchmark
+    public RedisResponse<?> correlate() {
+        RedisResponse<?> response = manager.getResponse(responses[(int) (next++ % inFlight)]);
+        if (response != null && !response.isMultiple()) {
+            awaitingResponses.put(response.getId(), response);
+        }
+        return response;
+    }
+}
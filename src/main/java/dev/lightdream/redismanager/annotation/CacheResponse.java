@@ -0,0 +1,29 @@
+package dev.lightdream.redismanager.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * The responses of the annotated event class are cached by the sender, identical requests (same target and same
+ * fields) are then answered locally until the response expires or is invalidated, see
+ * {@link dev.lightdream.redismanager.cache.RedisResponseCache}. Only use it on events that read data.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface CacheResponse {
+
+    /**
+     * @return the time in milliseconds a response is used for
+     */
+    long ttl() default 60000;
+
+    /**
+     * @return the maximum number of responses kept for the class, the least recently used are evicted first
+     */
+    int maxEntries() default 1024;
+
+}
@@ -0,0 +1,19 @@
+package dev.lightdream.redismanager.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Requests of the annotated event class sent while an identical one (same target and same fields) is waiting for its
+ * response are completed with the response of the first one instead of being published again. Each keeps its own
+ * {@link dev.lightdream.redismanager.dto.RedisResponse} and timeout. Only use it on events that query data, the
+ * handlers run once for all the coalesced requests.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Inherited
+public @interface Coalesce {
+}
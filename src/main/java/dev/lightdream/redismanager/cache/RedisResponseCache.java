@@ -0,0 +1,174 @@
+package dev.lightdream.redismanager.cache;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.reflect.TypeToken;
+import dev.lightdream.redismanager.annotation.CacheResponse;
+import dev.lightdream.redismanager.event.RedisEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Responses of the {@link CacheResponse} event classes, kept by the node that sent the requests. Every class has its
+ * own region, bounded to {@link CacheResponse#maxEntries()} responses with LRU eviction.
+ * <p>
+ * Requests are keyed by their target and their fields, without the id and the originator, so the key of a request is
+ * the same on every node and can be sent in an {@link dev.lightdream.redismanager.event.impl.InvalidateCacheEvent}.
+ * A response whose request was sent before an invalidation of its class is not cached.
+ * <p>
+ * Responses are kept as JSON trees and every hit gets its own copy, so a caller changing its response does not
+ * change the one of the other callers.
+ */
+public class RedisResponseCache {
+
+    private final ClassValue<Region> regions = new ClassValue<Region>() {
+        @Override
+        protected Region computeValue(Class<?> type) {
+            CacheResponse annotation = type.getAnnotation(CacheResponse.class);
+            return annotation == null ? null : new Region(annotation);
+        }
+    };
+    // Class name -> region, for the invalidations received by name. The name of the Java class, not the overridable
+    // RedisEvent#getClassName()
+    private final Map<String, Region> regionsByName = new ConcurrentHashMap<>();
+
+    /**
+     * @return the region of the event class, null if its responses are not cached
+     */
+    public @Nullable Region region(Class<?> eventClass) {
+        Region region = regions.get(eventClass);
+        if (region != null) {
+            regionsByName.putIfAbsent(eventClass.getName(), region);
+        }
+        return region;
+    }
+
+    /**
+     * @param key the key of the request, null to remove every response of the class
+     */
+    public void invalidate(String eventClass, @Nullable String key) {
+        Region region = regionsByName.get(eventClass);
+        if (region == null) {
+            // Nothing was cached for the class on this node
+            return;
+        }
+
+        if (key == null) {
+            region.clear();
+            return;
+        }
+        region.remove(key);
+    }
+
+    public static String key(RedisEvent<?> request, Gson gson) {
+        JsonObject json = gson.toJsonTree(request).getAsJsonObject();
+        json.remove("id");
+        json.remove("originator");
+        return request.getRedisTarget() + '\n' + json;
+    }
+
+    public static class Region {
+
+        private final long ttlNanos;
+        private final LinkedHashMap<String, CachedResponse> entries;
+        // Incremented by every invalidation
+        private long generation;
+
+        private Region(CacheResponse annotation) {
+            this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(annotation.ttl());
+            int maxEntries = annotation.maxEntries();
+            this.entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        /**
+         * @return the cached response, null if there is none or it expired
+         */
+        public synchronized @Nullable CachedResponse get(String key) {
+            CachedResponse entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.expiresAt >= 0) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        /**
+         * @return the generation to pass to {@link #put} once the response arrives
+         */
+        public synchronized long generation() {
+            return generation;
+        }
+
+        /**
+         * @param type       the response type of the event class
+         * @param generation the {@link #generation()} when the request was sent
+         */
+        public void put(String key, @Nullable Object response, Type type, Gson gson, long generation) {
+            // Copied outside the lock
+            CachedResponse cached = new CachedResponse(response, type, gson, System.nanoTime() + ttlNanos);
+
+            synchronized (this) {
+                if (generation != this.generation) {
+                    // Invalidated while the request was in flight, the response may be stale
+                    return;
+                }
+                entries.put(key, cached);
+            }
+        }
+
+        public synchronized void remove(String key) {
+            generation++;
+            entries.remove(key);
+        }
+
+        public synchronized void clear() {
+            generation++;
+            entries.clear();
+        }
+
+        public synchronized int size() {
+            return entries.size();
+        }
+    }
+
+    public static class CachedResponse {
+
+        private final @Nullable JsonElement response;
+        private final Type type;
+        private final @Nullable String className;
+        private final long expiresAt;
+
+        private CachedResponse(@Nullable Object response, Type type, Gson gson, long expiresAt) {
+            // The actual class when the event class does not declare one
+            this.type = response != null && type == Object.class ? response.getClass() : type;
+            this.response = response == null ? null : gson.toJsonTree(response, this.type);
+            this.className = response == null ? null : response.getClass().getName();
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * @return a copy of the response
+         */
+        public @Nullable Object response(Gson gson) {
+            return response == null ? null : gson.getAdapter(TypeToken.get(type)).fromJsonTree(response);
+        }
+
+        public @Nullable String className() {
+            return className;
+        }
+    }
+}
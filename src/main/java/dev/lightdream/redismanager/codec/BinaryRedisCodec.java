@@ -0,0 +1,261 @@
+package dev.lightdream.redismanager.codec;
+
+import com.google.gson.ExclusionStrategy;
+import com.google.gson.FieldAttributes;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compact codec. The fields of {@link RedisEvent} are written as a binary header, with the event class replaced by
+ * the id from the {@link RedisEventTypeRegistry} and the channels interned on both sides. The fields of the subclass
+ * follow as UTF-8 JSON, streamed straight to bytes through the registered gson adapters so every event that works
+ * with {@link JsonRedisCodec} works with this codec as well.
+ * <p>
+ * Frame: magic, varint type id, [class name if the type id is 0], zigzag varlong id, originator, redisTarget, body.
+ * Strings are written as a varint length followed by UTF-8 bytes.
+ * <p>
+ * JSON payloads are still decoded, so nodes can be switched from {@link JsonRedisCodec} one at a time.
+ */
+@SuppressWarnings("rawtypes")
+public class BinaryRedisCodec implements RedisCodec {
+
+    public static final byte MAGIC = 0x01;
+
+    private static final Field CLASS_NAME_FIELD;
+
+    static {
+        try {
+            CLASS_NAME_FIELD = RedisEvent.class.getDeclaredField("className");
+            CLASS_NAME_FIELD.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final @Getter RedisEventTypeRegistry registry;
+    private final Map<Class<?>, TypeAdapter<RedisEvent>> bodyAdapters = new ConcurrentHashMap<>();
+    private final JsonRedisCodec jsonCodec = new JsonRedisCodec();
+    private RedisManager manager;
+    private Gson bodyGson;
+
+    public BinaryRedisCodec(RedisEventTypeRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void init(RedisManager manager) {
+        this.manager = manager;
+        this.jsonCodec.init(manager);
+
+        // The header already carries the fields of RedisEvent
+        ExclusionStrategy headerExclusion = new ExclusionStrategy() {
+            @Override
+            public boolean shouldSkipField(FieldAttributes field) {
+                return field.getDeclaringClass() == RedisEvent.class;
+            }
+
+            @Override
+            public boolean shouldSkipClass(Class<?> clazz) {
+                return false;
+            }
+        };
+        this.bodyGson = manager.gson().newBuilder()
+                .addSerializationExclusionStrategy(headerExclusion)
+                .addDeserializationExclusionStrategy(headerExclusion)
+                .create();
+    }
+
+    @Override
+    public byte[] encode(RedisEvent<?> event) {
+        try {
+            EncodeBuffer out = EncodeBuffer.acquire();
+            out.write(MAGIC);
+
+            int typeId = event.getClass().getName().equals(event.getClassName()) ?
+                    registry.getId(event.getClass()) : 0;
+            writeVarInt(out, typeId);
+            if (typeId == 0) {
+                writeBytes(out, event.getClassName().getBytes(StandardCharsets.UTF_8));
+            }
+
+            writeVarLong(out, (event.getId() << 1) ^ (event.getId() >> 63));
+            writeBytes(out, manager.channelNames().encode(event.getOriginator()));
+            writeBytes(out, manager.channelNames().encode(event.getRedisTarget()));
+
+            JsonWriter writer = new JsonWriter(out.writer());
+            if (event.getClass() == ResponseEvent.class) {
+                manager.redisEventTypeAdapter().responseEventAdapter().writeBody(writer, (ResponseEvent) event);
+            } else {
+                getBodyAdapter(event.getClass()).write(writer, event);
+            }
+
+            return out.release();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode " + event.getClassName(), e);
+        }
+    }
+
+    @Override
+    public @Nullable RedisEvent<?> decode(byte[] data) {
+        if (data.length == 0) {
+            return null;
+        }
+        if (data[0] != MAGIC) {
+            return jsonCodec.decode(data);
+        }
+
+        try {
+            Input input = new Input(data, 1);
+
+            int typeId = input.readVarInt();
+            Class<? extends RedisEvent> clazz;
+            String className = null;
+            if (typeId == 0) {
+                int length = input.readVarInt();
+                className = new String(data, input.position, length, StandardCharsets.UTF_8);
+                input.position += length;
+                clazz = manager.redisEventTypeAdapter().getEventClass(className);
+            } else {
+                clazz = registry.getEventClass(typeId);
+            }
+
+            if (clazz == null) {
+                Logger.error("Event " + (className == null ? "with type id " + typeId : className) + " could not " +
+                        "be resolved. Please make sure the class exists and is registered with the same id on every " +
+                        "node.");
+                return null;
+            }
+
+            long zigzag = input.readVarLong();
+            long id = (zigzag >>> 1) ^ -(zigzag & 1);
+            String originator = input.readChannel(manager.channelNames());
+            String redisTarget = input.readChannel(manager.channelNames());
+
+            JsonReader reader = new JsonReader(new InputStreamReader(
+                    new ByteArrayInputStream(data, input.position, data.length - input.position),
+                    StandardCharsets.UTF_8));
+            if (clazz == ResponseEvent.class) {
+                // The id is already known, so the response is decoded straight to the awaited type
+                return manager.redisEventTypeAdapter().responseEventAdapter().read(reader, id, originator, redisTarget);
+            }
+
+            RedisEvent<?> event = getBodyAdapter(clazz).read(reader);
+
+            if (event.getClassName() == null) {
+                // Created without calling a constructor
+                CLASS_NAME_FIELD.set(event, className == null ? clazz.getName() : className);
+            }
+            event.setId(id);
+            event.setOriginator(originator);
+            event.setRedisTarget(redisTarget);
+
+            return event;
+        } catch (Exception e) {
+            Logger.error("Error while decoding a binary RedisEvent");
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(byte[] data) {
+        if (data.length == 0 || data[0] != MAGIC) {
+            return jsonCodec.toString(data);
+        }
+
+        RedisEvent<?> event = decode(data);
+        return event == null ? "<undecodable binary event>" : event.serialize();
+    }
+
+    @SuppressWarnings("unchecked")
+    private TypeAdapter<RedisEvent> getBodyAdapter(Class<?> clazz) {
+        TypeAdapter<RedisEvent> adapter = bodyAdapters.get(clazz);
+        if (adapter == null) {
+            adapter = bodyAdapters.computeIfAbsent(clazz, key -> (TypeAdapter<RedisEvent>)
+                    bodyGson.getDelegateAdapter(manager.redisEventTypeAdapter(), TypeToken.get(key)));
+        }
+        return adapter;
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static class Input {
+
+        private final byte[] data;
+        int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        private String readChannel(ChannelNameCache channelNames) {
+            int length = readVarInt();
+            String channel = channelNames.decode(data, position, length);
+            position += length;
+            return channel;
+        }
+    }
+}
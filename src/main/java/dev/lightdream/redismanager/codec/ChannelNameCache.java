@@ -0,0 +1,81 @@
+package dev.lightdream.redismanager.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns channel names in both directions, so the same few channels are not encoded to bytes on every publish and
+ * not decoded into a new String on every received message.
+ */
+public class ChannelNameCache {
+
+    private static final int DECODE_CACHE_SIZE = 256;
+    private static final int MAX_ENCODED = 4096;
+
+    private final Map<String, byte[]> encoded = new ConcurrentHashMap<>();
+    // Direct mapped by hash, a collision simply replaces the previous entry
+    private final Entry[] decoded = new Entry[DECODE_CACHE_SIZE];
+
+    /**
+     * @return the UTF-8 bytes of the channel. The returned array is shared and must not be modified.
+     */
+    public byte[] encode(String channel) {
+        byte[] bytes = encoded.get(channel);
+        if (bytes != null) {
+            return bytes;
+        }
+
+        bytes = channel.getBytes(StandardCharsets.UTF_8);
+        if (encoded.size() < MAX_ENCODED) {
+            encoded.put(channel, bytes);
+        }
+        return bytes;
+    }
+
+    public String decode(byte[] data) {
+        return decode(data, 0, data.length);
+    }
+
+    public String decode(byte[] data, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + data[i];
+        }
+
+        int index = (hash ^ (hash >>> 16)) & (DECODE_CACHE_SIZE - 1);
+        Entry entry = decoded[index];
+        if (entry != null && entry.hash == hash && entry.matches(data, offset, length)) {
+            return entry.value;
+        }
+
+        String value = new String(data, offset, length, StandardCharsets.UTF_8);
+        decoded[index] = new Entry(hash, encode(value), value);
+        return value;
+    }
+
+    private static class Entry {
+
+        private final int hash;
+        private final byte[] bytes;
+        private final String value;
+
+        private Entry(int hash, byte[] bytes, String value) {
+            this.hash = hash;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        private boolean matches(byte[] data, int offset, int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[i] != data[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
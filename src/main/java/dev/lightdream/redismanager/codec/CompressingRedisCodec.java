@@ -0,0 +1,172 @@
+package dev.lightdream.redismanager.codec;
+
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates the payloads of another codec once they reach the threshold. Compressed payloads start with
+ * {@link #MARKER}, followed by the varint size of the original payload and the raw deflate data. Payloads under the
+ * threshold, or that do not get smaller, are published unchanged, so the wrapped codec must not produce payloads
+ * starting with {@link #MARKER}.
+ * <p>
+ * Compressed payloads are always decoded, so the threshold can be enabled on one node at a time once all the nodes
+ * run a version that has this codec.
+ */
+public class CompressingRedisCodec implements RedisCodec {
+
+    public static final byte MARKER = 0x02;
+
+    // Redis does not accept bigger values
+    private static final int MAX_PAYLOAD_SIZE = 512 * 1024 * 1024;
+
+    private final RedisCodec codec;
+    private final int threshold;
+    private final ThreadLocal<Deflater> deflaters;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    // Metrics
+    private final LongAdder compressedMessages = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+
+    /**
+     * @param threshold the size in bytes from which payloads are compressed, negative to never compress
+     * @param level     the {@link Deflater} compression level
+     */
+    public CompressingRedisCodec(RedisCodec codec, int threshold, int level) {
+        this.codec = codec;
+        this.threshold = threshold;
+        this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+    }
+
+    @Override
+    public void init(RedisManager manager) {
+        codec.init(manager);
+    }
+
+    /**
+     * @return the codec the payloads are compressed from
+     */
+    public RedisCodec codec() {
+        return codec;
+    }
+
+    @Override
+    public byte[] encode(RedisEvent<?> event) {
+        byte[] data = codec.encode(event);
+        if (threshold < 0 || data.length < threshold) {
+            return data;
+        }
+
+        Deflater deflater = deflaters.get();
+        try {
+            EncodeBuffer out = EncodeBuffer.acquire();
+            out.write(MARKER);
+            BinaryRedisCodec.writeVarInt(out, data.length);
+
+            deflater.setInput(data);
+            deflater.finish();
+            if (!out.deflate(deflater, data.length)) {
+                return data;
+            }
+
+            byte[] compressed = out.release();
+
+            compressedMessages.increment();
+            uncompressedBytes.add(data.length);
+            compressedBytes.add(compressed.length);
+
+            return compressed;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to compress " + event.getClassName(), e);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    @Override
+    public @Nullable RedisEvent<?> decode(byte[] data) {
+        byte[] payload = decompress(data);
+        return payload == null ? null : codec.decode(payload);
+    }
+
+    @Override
+    public String toString(byte[] data) {
+        byte[] payload = decompress(data);
+        return payload == null ? "<undecodable compressed event>" : codec.toString(payload);
+    }
+
+    private @Nullable byte[] decompress(byte[] data) {
+        if (data.length == 0 || data[0] != MARKER) {
+            return data;
+        }
+
+        Inflater inflater = inflaters.get();
+        try {
+            BinaryRedisCodec.Input input = new BinaryRedisCodec.Input(data, 1);
+            int length = input.readVarInt();
+            if (length < 0 || length > MAX_PAYLOAD_SIZE) {
+                Logger.error("Compressed RedisEvent has an invalid size of " + length + " bytes");
+                return null;
+            }
+
+            byte[] result = new byte[length];
+            inflater.setInput(data, input.position, data.length - input.position);
+
+            int position = 0;
+            while (position < length) {
+                int inflated = inflater.inflate(result, position, length - position);
+                if (inflated == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                    Logger.error("Compressed RedisEvent is truncated");
+                    return null;
+                }
+                position += inflated;
+            }
+
+            return result;
+        } catch (DataFormatException | ArrayIndexOutOfBoundsException e) {
+            Logger.error("Error while decompressing a RedisEvent");
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+            return null;
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    /**
+     * @return the number of payloads that were published compressed
+     */
+    public long compressedMessages() {
+        return compressedMessages.sum();
+    }
+
+    /**
+     * @return the size of the compressed payloads before compression, in bytes
+     */
+    public long uncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    /**
+     * @return the size of the compressed payloads after compression, in bytes
+     */
+    public long compressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return the number of bytes compression kept off the wire
+     */
+    public long bytesSaved() {
+        return uncompressedBytes() - compressedBytes();
+    }
+}
@@ -0,0 +1,78 @@
+package dev.lightdream.redismanager.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Per thread scratch buffer the codecs encode into, so the only allocation left per event is the exactly sized copy
+ * that is handed to Jedis.
+ */
+class EncodeBuffer extends ByteArrayOutputStream {
+
+    private static final int MAX_RETAINED_SIZE = 1024 * 1024; // 1MB
+    private static final ThreadLocal<EncodeBuffer> buffers = ThreadLocal.withInitial(EncodeBuffer::new);
+
+    private Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+    // Whether the writer was used since the last release, it then holds the chars of an encode that failed
+    private boolean writing;
+
+    private EncodeBuffer() {
+        super(1024);
+    }
+
+    static EncodeBuffer acquire() {
+        EncodeBuffer buffer = buffers.get();
+        if (buffer.writing) {
+            buffer.writer = new OutputStreamWriter(buffer, StandardCharsets.UTF_8);
+            buffer.writing = false;
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * @return the UTF-8 writer on top of this buffer. Must be flushed before writing bytes directly to the buffer again.
+     */
+    Writer writer() {
+        writing = true;
+        return writer;
+    }
+
+    /**
+     * Writes the output of a finished deflater straight to the buffer
+     *
+     * @return false if the buffer would grow past the limit before the deflater is done
+     */
+    boolean deflate(Deflater deflater, int limit) {
+        while (!deflater.finished()) {
+            if (count >= limit) {
+                return false;
+            }
+            if (count == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            count += deflater.deflate(buf, count, buf.length - count);
+        }
+        return true;
+    }
+
+    /**
+     * @return the encoded bytes. The buffer is dropped if an unusually large event made it grow past the retained size.
+     */
+    byte[] release() throws IOException {
+        writer.flush();
+        writing = false;
+        byte[] result = toByteArray();
+
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buffers.remove();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package dev.lightdream.redismanager.codec;
+
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Default codec, the payload is the UTF-8 JSON produced by {@link RedisEvent#serialize()}
+ */
+public class JsonRedisCodec implements RedisCodec {
+
+    private RedisManager manager;
+
+    @Override
+    public void init(RedisManager manager) {
+        this.manager = manager;
+    }
+
+    @Override
+    public byte[] encode(RedisEvent<?> event) {
+        EncodeBuffer buffer = EncodeBuffer.acquire();
+        manager.gson().toJson(event, buffer.writer());
+
+        try {
+            return buffer.release();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode " + event.getClassName(), e);
+        }
+    }
+
+    @Override
+    public @Nullable RedisEvent<?> decode(byte[] data) {
+        return manager.redisEventTypeAdapter().deserialize(new String(data, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString(byte[] data) {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
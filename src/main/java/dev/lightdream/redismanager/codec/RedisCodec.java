@@ -0,0 +1,31 @@
+package dev.lightdream.redismanager.codec;
+
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Turns events into the payloads published on Redis and back. All the nodes listening on the same channelBase must
+ * use compatible codecs.
+ */
+public interface RedisCodec {
+
+    /**
+     * Called once by the {@link RedisManager} that uses this codec, before anything is encoded or decoded
+     */
+    default void init(RedisManager manager) {
+    }
+
+    byte[] encode(RedisEvent<?> event);
+
+    /**
+     * @return the event or null if it could not be decoded. The reason is logged by the codec.
+     */
+    @Nullable RedisEvent<?> decode(byte[] data);
+
+    /**
+     * @return a human-readable representation of the payload, used for debugging
+     */
+    String toString(byte[] data);
+
+}
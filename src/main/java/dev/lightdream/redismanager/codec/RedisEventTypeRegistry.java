@@ -0,0 +1,75 @@
+package dev.lightdream.redismanager.codec;
+
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.InvalidateCacheEvent;
+import dev.lightdream.redismanager.event.impl.PingEvent;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps event classes to the small integer ids used by {@link BinaryRedisCodec}. Every node must register the same
+ * classes with the same ids. Events that are not registered are still sent, with their class name instead of an id.
+ */
+@SuppressWarnings("rawtypes")
+public class RedisEventTypeRegistry {
+
+    /**
+     * Ids below this value are reserved for the events of this library
+     */
+    public static final int FIRST_USER_ID = 16;
+
+    private final Map<Class<?>, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<Integer, Class<? extends RedisEvent>> classes = new ConcurrentHashMap<>();
+
+    public RedisEventTypeRegistry() {
+        registerInternal(1, ResponseEvent.class);
+        registerInternal(2, PingEvent.class);
+        registerInternal(3, InvalidateCacheEvent.class);
+    }
+
+    /**
+     * @param id    the id of the class, must be at least {@link #FIRST_USER_ID}
+     * @param clazz the event class
+     */
+    @SuppressWarnings("unused")
+    public RedisEventTypeRegistry register(int id, Class<? extends RedisEvent> clazz) {
+        if (id < FIRST_USER_ID) {
+            throw new IllegalArgumentException("Ids below " + FIRST_USER_ID + " are reserved, got " + id + " for " +
+                    clazz.getName());
+        }
+
+        registerInternal(id, clazz);
+        return this;
+    }
+
+    private synchronized void registerInternal(int id, Class<? extends RedisEvent> clazz) {
+        Class<? extends RedisEvent> existingClass = classes.get(id);
+        if (existingClass != null && existingClass != clazz) {
+            throw new IllegalArgumentException("Id " + id + " is already used by " + existingClass.getName());
+        }
+
+        Integer existingId = ids.get(clazz);
+        if (existingId != null && existingId != id) {
+            throw new IllegalArgumentException(clazz.getName() + " is already registered with id " + existingId);
+        }
+
+        ids.put(clazz, id);
+        classes.put(id, clazz);
+    }
+
+    /**
+     * @return the id of the class or 0 if it is not registered
+     */
+    public int getId(Class<?> clazz) {
+        Integer id = ids.get(clazz);
+        return id == null ? 0 : id;
+    }
+
+    public @Nullable Class<? extends RedisEvent> getEventClass(int id) {
+        return classes.get(id);
+    }
+
+}
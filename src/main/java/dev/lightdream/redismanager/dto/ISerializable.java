@@ -5,7 +5,7 @@ import dev.lightdream.redismanager.manager.RedisManager;
 public interface ISerializable {
 
     default String serialize() {
-        return RedisManager.instance().gsonSettings().gson().toJson(this);
+        return RedisManager.instance().gson().toJson(this);
     }
 
     String toString();
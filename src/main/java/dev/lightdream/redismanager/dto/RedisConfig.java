@@ -1,8 +1,12 @@
 package dev.lightdream.redismanager.dto;
 
+import dev.lightdream.redismanager.executor.RejectionPolicy;
+import dev.lightdream.redismanager.transport.TransportType;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
 @Getter
@@ -18,6 +22,59 @@ public class RedisConfig {
     // Advanced settings
     private String redisID = UUID.randomUUID().toString();
     private int timeout = 2000; // 2s
+    private int timeoutTickDuration = 10; // 10ms
+    private int timeoutWheelSize = 512;
+    private int compressionThreshold = -1; // In bytes, -1 to disable. Compressed events are always decoded.
+    private int compressionLevel = 1; // Deflater.BEST_SPEED
+    private int maxConnections = 16;
+    private int connectTimeout = 2000; // 2s
+    private int socketTimeout = 2000; // 2s
+    private int heartbeatInterval = 1000; // 1s, the subscriber is reconnected after 3 missed heartbeats
+    private int reconnectBaseDelay = 100; // 100ms
+    private int reconnectMaxDelay = 10000; // 10s
+    private int shutdownTimeout = 5000; // 5s, how long RedisManager#shutdown waits for the queued events to be published
+    private boolean metricsJmx = false; // Registers the RedisManager#metrics as MBeans
+    // Events sent to * are published on channelBase#*#<event class>, only read by the nodes handling the class. Must be
+    // enabled on every node at once, nodes without it do not receive these events.
+    private boolean interestChannels = false;
+
+    // Asynchronous publishing, see RedisPublisher
+    private boolean asyncPublish = false;
+    private int publisherThreads = 1; // More than 1 thread does not keep the order of the published events
+    private int publishQueueSize = 65536;
+    private int publishBatchSize = 512;
+    private int publishLinger = 0; // 0 microseconds
+    private RejectionPolicy publishBackpressure = RejectionPolicy.BLOCK;
+
+    // Outbox for the events sent while Redis is unreachable, see RedisOutbox
+    private boolean outbox = false;
+    private String outboxDirectory = "redis-outbox";
+    private int outboxSegmentSize = 16 * 1024 * 1024; // 16MB
+    private int outboxMaxSegments = 8;
+    private int outboxFlushInterval = 50; // 50ms
+    private long outboxTtl = 60000; // 1m, see RedisEvent#getOutboxTtl
+
+    // Redis Streams transport, see RedisStreamTransport
+    private TransportType transport = TransportType.PUB_SUB;
+    private List<String> streamGroups = new ArrayList<>(); // Targets whose events are shared with the other nodes reading them
+    private long streamMaxLength = 100000; // Approximate, the oldest entries are trimmed
+    private int streamBatchSize = 128;
+    private int streamBlock = 1000; // 1s
+    private int streamClaimIdle = 30000; // 30s, unacknowledged entries are then claimed by another node of the group
+    private int streamGroupIdle = 3600000; // 1h, the groups and the stream of a node that read nothing for it are removed
+
+    // Wire tracer, see RedisTracer
+    private boolean trace = false;
+    private int traceBufferSize = 4096; // Rounded up to a power of 2
+    private int traceSampleRate = 1; // 1 in N requests is traced, with its response
+    private List<String> traceEvents = new ArrayList<>(); // Class names of the traced events, empty for all
+    private List<String> traceChannels = new ArrayList<>(); // Traced channels, empty for all
+    private boolean tracePayloads = false; // Keeps a reference to the payloads, decoded when dumped
+    private boolean traceDumpOnTimeout = true; // Logs the trace when a request times out, at most once per second
+
+    // Redis Cluster transport, see RedisClusterTransport
+    private List<String> clusterNodes = new ArrayList<>(); // host:port of the seed nodes, host and port if empty
+    @Deprecated // Responses now wake up the waiting thread directly, this is no longer used
     private int waitBeforeIteration = 50; // 50ms
 
     public String getChannel() {
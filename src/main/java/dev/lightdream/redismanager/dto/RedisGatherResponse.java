@@ -0,0 +1,117 @@
+package dev.lightdream.redismanager.dto;
+
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+
+import java.lang.reflect.Type;
+import java.util.stream.Collector;
+
+/**
+ * The responses of a request sent to several nodes, usually to {@code *}. The responses are folded into the
+ * {@link Collector} as they arrive, so they are not kept, and the future is completed with the result once either
+ * <ul>
+ *     <li>every node that received the request responded</li>
+ *     <li>the limit of responses was reached</li>
+ *     <li>the deadline passed, with the responses received so far, see {@link #isPartial()}</li>
+ * </ul>
+ * The number of nodes is the number of receivers reported when publishing, which is the number of subscribers with
+ * Pub/Sub. With {@link dev.lightdream.redismanager.transport.TransportType#STREAMS} it is unknown, so the request
+ * completes on the limit or the deadline. Nodes without a handler never respond, which also leads to the deadline.
+ *
+ * @param <T> the type of a single response
+ * @param <R> the type of the result
+ */
+public class RedisGatherResponse<T, R> extends RedisResponse<R> {
+
+    private final transient int limit;
+    private final transient Collector<? super T, Object, R> collector;
+    private final transient Object container;
+
+    // Guarded by this
+    private transient int responses;
+    private transient long receivers = -1;
+    private transient boolean partial;
+
+    /**
+     * @param type  the type a single response is decoded as
+     * @param limit the number of responses after which the result is completed, 0 to wait for every node
+     */
+    @SuppressWarnings("unchecked")
+    public <A> RedisGatherResponse(long id, Type type, int limit, Collector<? super T, A, R> collector) {
+        super(id, type);
+        this.limit = limit;
+        this.collector = (Collector<? super T, Object, R>) collector;
+        this.container = this.collector.supplier().get();
+
+        getPublishFuture().thenAccept(this::receivers);
+    }
+
+    @Override
+    public void respond(ResponseEvent response) {
+        //noinspection unchecked
+        accept((T) response.getResponse());
+    }
+
+    private synchronized void accept(T response) {
+        if (getFuture().isDone()) {
+            return;
+        }
+
+        collector.accumulator().accept(container, response);
+        responses++;
+        completeIfDone();
+    }
+
+    private synchronized void receivers(long receivers) {
+        this.receivers = receivers;
+        completeIfDone();
+    }
+
+    private void completeIfDone() {
+        if ((limit > 0 && responses >= limit) || (receivers >= 0 && responses >= receivers)) {
+            complete();
+        }
+    }
+
+    /**
+     * Completes the result with the responses received so far
+     */
+    @Override
+    public synchronized void timeout() {
+        if (getFuture().isDone()) {
+            return;
+        }
+
+        partial = true;
+        complete();
+    }
+
+    private void complete() {
+        respond(collector.finisher().apply(container), null);
+    }
+
+    /**
+     * @return true if the deadline passed before every expected response arrived
+     */
+    public synchronized boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * @return the number of responses folded into the result
+     */
+    public synchronized int getResponses() {
+        return responses;
+    }
+
+    /**
+     * @return the number of nodes that received the request, -1 if it is not known yet
+     */
+    public synchronized long getReceivers() {
+        return receivers;
+    }
+
+    @Override
+    public boolean isMultiple() {
+        return true;
+    }
+}
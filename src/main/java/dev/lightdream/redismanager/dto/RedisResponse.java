@@ -1,12 +1,13 @@
 package dev.lightdream.redismanager.dto;
 
 import dev.lightdream.redismanager.event.impl.ResponseEvent;
-import dev.lightdream.redismanager.manager.RedisManager;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.SneakyThrows;
 
-import java.util.List;
+import java.lang.reflect.Type;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 @NoArgsConstructor
 @Getter
@@ -19,47 +20,85 @@ public class RedisResponse<T> implements ISerializable {
     // State
     private boolean finished = false;
     private boolean timeout = false;
+    private final transient CompletableFuture<T> future = new CompletableFuture<>();
+    private final transient CompletableFuture<Long> publishFuture = new CompletableFuture<>();
+    // The type the response is decoded as
+    private transient Type type = Object.class;
 
     public RedisResponse(long id) {
         this.id = id;
     }
 
+    public RedisResponse(long id, Type type) {
+        this.id = id;
+        this.type = type;
+    }
+
     public void markAsFinished() {
         finished = true;
     }
 
     public void timeout() {
-        timeout = true;
+        if (future.completeExceptionally(new TimeoutException("No response received for request " + id))) {
+            timeout = true;
+        }
     }
 
+    /**
+     * @return true if the response did not arrive in time or the request could not be sent
+     */
     @SuppressWarnings("unused")
     public boolean hasTimeout() {
-        return timeout;
+        return timeout || future.isCompletedExceptionally();
     }
 
     public void respond(T object, String responseClass) {
+        if (future.isDone()) {
+            return;
+        }
+
         this.response = object;
         this.responseClassName = responseClass;
         markAsFinished();
+        future.complete(object);
+    }
+
+    /**
+     * @return true if several responses are awaited for the request, in which case the request stays registered until
+     * its future is completed
+     */
+    public boolean isMultiple() {
+        return false;
     }
 
     public void respond(ResponseEvent response) {
-        if (response.getResponse().isEmpty() || response.getResponseClassName().isEmpty()) {
-            respond(null, response.getResponseClassName());
-            return;
-        }
+        Object object = response.getResponse();
 
-        if (response.getResponseClass().isAssignableFrom(List.class)) {
-            //noinspection unchecked
-            T object = (T) response.deserialize();
-            respond(object, response.getResponseClassName());
-            return;
-        }
+        //noinspection unchecked
+        respond((T) object, object == null ? null : object.getClass().getName());
+    }
 
+    /**
+     * Completes this response with the one of an identical request
+     */
+    public void respond(RedisResponse<?> source) {
         //noinspection unchecked
-        T object = (T) RedisManager.instance().gsonSettings().gson()
-                .fromJson(response.getResponse(), response.getResponseClass());
-        respond(object, response.getResponseClassName());
+        respond((T) source.response, source.responseClassName);
+    }
+
+    /**
+     * @return a future that is completed with the response as soon as it arrives
+     */
+    public CompletableFuture<T> getFuture() {
+        return future;
+    }
+
+    /**
+     * @return a future that is completed with the number of nodes that received the request once it was published, or
+     * completed exceptionally if it could not be published
+     */
+    public CompletableFuture<Long> getPublishFuture() {
+        return publishFuture;
     }
 
     @SuppressWarnings("unused")
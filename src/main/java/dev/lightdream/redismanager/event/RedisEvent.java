@@ -1,29 +1,42 @@
 package dev.lightdream.redismanager.event;
 
-import dev.lightdream.lambda.ScheduleManager;
 import dev.lightdream.lambda.lambda.ArgLambdaExecutor;
 import dev.lightdream.lambda.lambda.LambdaExecutor;
 import dev.lightdream.redismanager.dto.ISerializable;
+import dev.lightdream.redismanager.dto.RedisGatherResponse;
 import dev.lightdream.redismanager.dto.RedisResponse;
 import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import dev.lightdream.redismanager.executor.RedisExecutor;
 import dev.lightdream.redismanager.manager.RedisManager;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.SneakyThrows;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collector;
+
 /**
  * @param <T> The type of the response
  */
 @Getter
-@AllArgsConstructor
 public class RedisEvent<T> implements ISerializable {
 
     private final String className;
     private @Setter long id = -1;
     private @Setter String originator = "UNKNOWN";
     private String redisTarget;
+    // The manager that sent or received this event, not sent
+    private transient @Getter(AccessLevel.NONE) @Setter @Nullable RedisManager manager;
+
+    public RedisEvent(String className, long id, String originator, String redisTarget) {
+        this.className = className;
+        this.id = id;
+        this.originator = originator;
+        this.redisTarget = redisTarget;
+    }
 
     /**
      * @param redisID the redis target that will listen for this event. You can use * for all.
@@ -38,8 +51,15 @@ public class RedisEvent<T> implements ISerializable {
         this.className = getClass().getName();
     }
 
-    public static RedisEvent<?> deserialize(String data) {
-        return RedisManager.instance().gsonSettings().gson().fromJson(data, RedisEvent.class);
+    /**
+     * @return the manager that sent or received this event, {@link RedisManager#instance()} if it was not sent yet
+     */
+    public RedisManager manager() {
+        return manager == null ? RedisManager.instance() : manager;
+    }
+
+    public static @Nullable RedisEvent<?> deserialize(String data) {
+        return RedisManager.instance().redisEventTypeAdapter().deserialize(data);
     }
 
     public void setRedisTarget(String redisID) {
@@ -50,12 +70,33 @@ public class RedisEvent<T> implements ISerializable {
         }
     }
 
+    /**
+     * Events received from Redis that return the same key are handled one at a time, in the order they arrived, while
+     * events with different keys are handled in parallel. Override this for events that must be processed in order
+     * per entity (e.g. the UUID of a player).
+     *
+     * @return the partition key of this event or null if it can be handled in any order
+     */
+    public @Nullable Object getPartitionKey() {
+        return null;
+    }
+
+    /**
+     * Only used if {@link dev.lightdream.redismanager.dto.RedisConfig#isOutbox()} is enabled. Override this for events
+     * that become useless after a while, or return 0 for events that must not be delivered late.
+     *
+     * @return the time in milliseconds this event may wait in the outbox while Redis is unreachable
+     */
+    public long getOutboxTtl() {
+        return manager().redisConfig().getOutboxTtl();
+    }
+
     /**
      * Fires the event (internally)
      * Does NOT send it to the redis target
      */
     public void fireEvent() {
-        RedisManager.instance().redisEventManager().fire(this);
+        manager().redisEventManager().fire(this);
     }
 
     @Override
@@ -75,7 +116,57 @@ public class RedisEvent<T> implements ISerializable {
      */
     @SuppressWarnings("UnusedReturnValue")
     public RedisResponse<T> send() {
-        return RedisManager.instance().send(this);
+        return manager().send(this);
+    }
+
+    /**
+     * Send the event through the redis manager to the target
+     *
+     * @param timeout the time in milliseconds after which the response is marked as timed out
+     * @return response
+     */
+    public RedisResponse<T> send(int timeout) {
+        return manager().send(this, timeout);
+    }
+
+    /**
+     * Send the event through the redis manager to the target without blocking
+     *
+     * @return a future completed with the response as soon as it arrives or completed exceptionally with a
+     * {@link java.util.concurrent.TimeoutException} after {@link dev.lightdream.redismanager.dto.RedisConfig#getTimeout()}
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<T> sendAsync() {
+        return send().getFuture();
+    }
+
+    /**
+     * @param timeout the time in milliseconds after which the future is completed exceptionally
+     * @see #sendAsync()
+     */
+    @SuppressWarnings("unused")
+    public CompletableFuture<T> sendAsync(int timeout) {
+        return send(timeout).getFuture();
+    }
+
+    /**
+     * Send the event to every node of the target, usually {@code *}, and collect their responses as they arrive
+     *
+     * @return the responses, completed once every node that received the event responded or with the responses
+     * received so far after {@link dev.lightdream.redismanager.dto.RedisConfig#getTimeout()}
+     */
+    @SuppressWarnings("unused")
+    public <A, R> RedisGatherResponse<T, R> gather(Collector<? super T, A, R> collector) {
+        return gather(0, manager().redisConfig().getTimeout(), collector);
+    }
+
+    /**
+     * @param limit   the number of responses after which the result is completed, 0 to wait for every node
+     * @param timeout the time in milliseconds after which the result is completed with the responses received so far
+     * @see #gather(Collector)
+     */
+    public <A, R> RedisGatherResponse<T, R> gather(int limit, int timeout, Collector<? super T, A, R> collector) {
+        return manager().gather(this, limit, timeout, collector);
     }
 
     public void sendAndExecuteSync(ArgLambdaExecutor<T> success, LambdaExecutor fail) {
@@ -113,32 +204,35 @@ public class RedisEvent<T> implements ISerializable {
     }
 
     public void sendAndExecute(ArgLambdaExecutor<T> success, LambdaExecutor fail) {
-        ScheduleManager.runTaskAsync(() -> sendAndExecuteSync(success, fail));
+        RedisExecutor executor = manager().handlerExecutor();
+
+        send().getFuture().whenComplete((response, throwable) -> executor.execute(() -> {
+            if (throwable != null) {
+                fail.execute();
+                return;
+            }
+
+            success.execute(response);
+        }));
     }
 
     @SuppressWarnings({"unused", "UnusedReturnValue"})
     @SneakyThrows
     public RedisResponse<T> sendAndWait() {
-        return sendAndWait(RedisManager.instance().redisConfig().getTimeout());
+        return sendAndWait(manager().redisConfig().getTimeout());
     }
 
-    @SuppressWarnings("BusyWait")
-    @SneakyThrows
+    @SneakyThrows(InterruptedException.class)
     public RedisResponse<T> sendAndWait(int timeout) {
-        int currentWait = 0;
-        RedisResponse<T> response = send();
-        while (!response.isFinished()) {
-            Thread.sleep(RedisManager.instance().redisConfig().getWaitBeforeIteration());
-            currentWait += RedisManager.instance().redisConfig().getWaitBeforeIteration();
-            if (currentWait > timeout) {
-                response.timeout();
-                break;
-            }
+        RedisResponse<T> response = send(timeout);
+        try {
+            response.getFuture().get();
+        } catch (ExecutionException ignored) {
+            // Timed out, reported through RedisResponse#hasTimeout
         }
 
-        //TODO Maybe implement logic for trying again, however for now simply remove the response afterwards
+        //TODO Maybe implement logic for trying again, however for now the response is dropped once it timed out
         //TODO This will need to have an option in the config to enable / disable packet resending
-        RedisManager.instance().awaitingResponses().remove(response);
 
         return response;
     }
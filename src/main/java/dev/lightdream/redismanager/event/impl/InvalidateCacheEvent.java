@@ -0,0 +1,35 @@
+package dev.lightdream.redismanager.event.impl;
+
+import dev.lightdream.redismanager.cache.RedisResponseCache;
+import dev.lightdream.redismanager.event.RedisEvent;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Removes cached responses on every node, see {@link dev.lightdream.redismanager.manager.RedisManager#invalidateCache}
+ */
+@Getter
+@NoArgsConstructor
+public class InvalidateCacheEvent extends RedisEvent<Boolean> {
+
+    private String eventClass;
+    // Null to remove every response of the class
+    private @Nullable String key;
+
+    /**
+     * Removes the cached response of the request
+     */
+    public InvalidateCacheEvent(RedisEvent<?> request) {
+        this.eventClass = request.getClass().getName();
+        this.key = RedisResponseCache.key(request, request.manager().gson());
+    }
+
+    /**
+     * Removes every cached response of the class
+     */
+    public InvalidateCacheEvent(Class<? extends RedisEvent<?>> eventClass) {
+        this.eventClass = eventClass.getName();
+        this.key = null;
+    }
+}
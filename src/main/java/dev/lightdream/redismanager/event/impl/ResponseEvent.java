@@ -1,71 +1,54 @@
 package dev.lightdream.redismanager.event.impl;
 
-import com.google.gson.reflect.TypeToken;
 import dev.lightdream.redismanager.event.RedisEvent;
-import dev.lightdream.redismanager.manager.RedisManager;
+import dev.lightdream.redismanager.type_adapter.RedisEventTypes;
 import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.SneakyThrows;
-
-import java.util.ArrayList;
-import java.util.List;
-
-@NoArgsConstructor
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Type;
+
+/**
+ * The response is written inline in the event, using the type from the {@link RedisEvent} type parameter of the
+ * command. The receiver reads it with the type of the {@link dev.lightdream.redismanager.dto.RedisResponse} that is
+ * waiting for it, so generic responses ({@code List<T>}, {@code Map<K, V>}, ...) keep their element types.
+ * <p>
+ * The class name of the response is only sent when the type parameter can not describe it, i.e. the response is a
+ * subclass of the declared type or the type parameter could not be resolved.
+ */
 @Getter
 public class ResponseEvent extends RedisEvent<Object> {
 
-    private static final String EMPTY_LIST = "EMPTY_LIST";
+    private final @Nullable String responseClassName;
+    private final @Nullable Object response;
+    // The type the response is written with, not sent
+    private final transient @Nullable Type responseType;
 
-    private String response;
-    private String responseClassName;
-    private String additionalData;
-
-    public ResponseEvent(RedisEvent<?> command, Object response) {
+    public ResponseEvent(RedisEvent<?> command, @Nullable Object response) {
         super(command.getOriginator());
         this.setId(command.getId());
+        this.setManager(command.manager());
+        this.response = response;
 
-        if (response == null) {
-            this.response = "";
-            this.responseClassName = "";
+        Type declaredType = RedisEventTypes.getResponseType(command.getClass());
+        if (response != null && declaredType instanceof Class && declaredType != response.getClass()) {
+            this.responseClassName = response.getClass().getName();
+            this.responseType = response.getClass();
             return;
         }
 
-        this.response = RedisManager.instance().gsonSettings().gson().toJson(response);
-        this.responseClassName = response.getClass().getName();
-
-        if (response.getClass().isAssignableFrom(List.class)) {
-            ArrayList<?> list = (ArrayList<?>) response;
-
-            if (list.isEmpty()) {
-                additionalData = EMPTY_LIST;
-                return;
-            }
-
-            additionalData = list.get(0).getClass().getName();
-        }
-    }
-
-    @SneakyThrows(value = {ClassNotFoundException.class})
-    public Object deserialize() {
-        Class<?> clazz = Class.forName(responseClassName);
-
-        if (clazz.isAssignableFrom(List.class)) {
-            if (additionalData.equals(EMPTY_LIST)) {
-                return new ArrayList<>();
-            }
-
-            Class<?> aditionalClass = Class.forName(additionalData);
-
-            return RedisManager.instance().gsonSettings().gson()
-                    .fromJson(response, TypeToken.getParameterized(List.class, aditionalClass));
-        }
-
-        return RedisManager.instance().gsonSettings().gson().fromJson(response, clazz);
+        this.responseClassName = null;
+        this.responseType = declaredType;
     }
 
-    @SneakyThrows(value = {ClassNotFoundException.class})
-    public Class<?> getResponseClass() {
-        return Class.forName(responseClassName);
+    /**
+     * Used when decoding a received response
+     */
+    public ResponseEvent(long id, String originator, String redisTarget, @Nullable String responseClassName,
+                         @Nullable Object response) {
+        super(ResponseEvent.class.getName(), id, originator, redisTarget);
+        this.responseClassName = responseClassName;
+        this.response = response;
+        this.responseType = null;
     }
 
 }
@@ -0,0 +1,78 @@
+package dev.lightdream.redismanager.executor;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Runs the tasks that share a partition key one after the other, in submission order, while tasks with different
+ * keys run in parallel. Every key is mapped to one of a fixed number of lanes, each lane being a single thread with a
+ * bounded queue. When a lane is full the submitting thread blocks, pushing back on the Redis subscriber instead of
+ * dropping or reordering events.
+ */
+public class PartitionedRedisExecutor {
+
+    private final AtomicReferenceArray<RedisExecutor> lanes;
+    private final int queueSize;
+
+    /**
+     * @param lanes     the number of lanes (threads)
+     * @param queueSize the maximum number of tasks waiting in a single lane
+     */
+    public PartitionedRedisExecutor(int lanes, int queueSize) {
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes must be greater than 0");
+        }
+
+        this.lanes = new AtomicReferenceArray<>(lanes);
+        this.queueSize = queueSize;
+    }
+
+    public void execute(Object partitionKey, Runnable task) {
+        int hash = partitionKey.hashCode();
+        hash ^= hash >>> 16;
+
+        getLane((hash & Integer.MAX_VALUE) % lanes.length()).execute(task);
+    }
+
+    /**
+     * @return the number of tasks waiting in all the lanes
+     */
+    public int queueSize() {
+        int size = 0;
+        for (int i = 0; i < lanes.length(); i++) {
+            RedisExecutor lane = lanes.get(i);
+            if (lane != null) {
+                size += lane.queueSize();
+            }
+        }
+        return size;
+    }
+
+    public void shutdown() {
+        for (int i = 0; i < lanes.length(); i++) {
+            RedisExecutor lane = lanes.get(i);
+            if (lane != null) {
+                lane.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Lanes are only started when the first task is mapped to them
+     */
+    private RedisExecutor getLane(int index) {
+        RedisExecutor lane = lanes.get(index);
+        if (lane != null) {
+            return lane;
+        }
+
+        synchronized (this) {
+            lane = lanes.get(index);
+            if (lane == null) {
+                lane = new ThreadPoolRedisExecutor("RedisManager-Partition-" + index, 1, queueSize,
+                        RejectionPolicy.BLOCK);
+                lanes.set(index, lane);
+            }
+            return lane;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dev.lightdream.redismanager.executor;
+
+import dev.lightdream.lambda.ScheduleManager;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the handlers of the events received from Redis
+ */
+public interface RedisExecutor extends Executor {
+
+    /**
+     * Runs every task on {@link ScheduleManager#runTaskAsync}. This is the default.
+     */
+    static RedisExecutor scheduleManager() {
+        return task -> ScheduleManager.runTaskAsync(task::run);
+    }
+
+    /**
+     * Runs every task directly on the thread that received the event. Handlers must not block, as they hold up the
+     * Redis subscriber.
+     */
+    @SuppressWarnings("unused")
+    static RedisExecutor callerThread() {
+        return Runnable::run;
+    }
+
+    /**
+     * @param threads   the number of platform threads
+     * @param queueSize the maximum number of tasks waiting for a thread
+     * @param policy    what to do with a task when the queue is full
+     */
+    @SuppressWarnings("unused")
+    static RedisExecutor boundedPool(int threads, int queueSize, RejectionPolicy policy) {
+        return new ThreadPoolRedisExecutor(threads, queueSize, policy);
+    }
+
+    /**
+     * Runs every task on its own virtual thread. Requires Java 21+.
+     *
+     * @throws UnsupportedOperationException if the current JVM does not support virtual threads
+     */
+    @SuppressWarnings("unused")
+    static RedisExecutor virtualThreads() {
+        return new VirtualThreadRedisExecutor();
+    }
+
+    /**
+     * @return the number of tasks waiting to be executed
+     */
+    default int queueSize() {
+        return 0;
+    }
+
+    default void shutdown() {
+    }
+
+}
@@ -0,0 +1,26 @@
+package dev.lightdream.redismanager.executor;
+
+public enum RejectionPolicy {
+
+    /**
+     * Throws a {@link java.util.concurrent.RejectedExecutionException}, the event is dropped and logged
+     */
+    ABORT,
+    /**
+     * Runs the task on the thread that submitted it
+     */
+    CALLER_RUNS,
+    /**
+     * Silently drops the task
+     */
+    DISCARD,
+    /**
+     * Drops the oldest task waiting in the queue and retries
+     */
+    DISCARD_OLDEST,
+    /**
+     * Blocks the thread that submitted the task until there is space in the queue
+     */
+    BLOCK
+
+}
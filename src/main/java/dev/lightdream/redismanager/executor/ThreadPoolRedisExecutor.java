@@ -0,0 +1,81 @@
+package dev.lightdream.redismanager.executor;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadPoolRedisExecutor implements RedisExecutor {
+
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    public ThreadPoolRedisExecutor(int threads, int queueSize, RejectionPolicy policy) {
+        this("RedisManager-Handler-" + poolCounter.incrementAndGet(), threads, queueSize, policy);
+    }
+
+    /**
+     * @param name the prefix of the names of the threads of this pool
+     */
+    public ThreadPoolRedisExecutor(String name, int threads, int queueSize, RejectionPolicy policy) {
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                task -> {
+                    Thread thread = new Thread(task, name + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                getHandler(policy));
+    }
+
+    private static RejectedExecutionHandler getHandler(RejectionPolicy policy) {
+        switch (policy) {
+            case CALLER_RUNS:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case DISCARD:
+                return new ThreadPoolExecutor.DiscardPolicy();
+            case DISCARD_OLDEST:
+                return new ThreadPoolExecutor.DiscardOldestPolicy();
+            case BLOCK:
+                return (task, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Executor has been shut down");
+                    }
+                    try {
+                        executor.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for space in the queue", e);
+                    }
+                    // Shut down while waiting, like ThreadPoolExecutor#execute the task is taken back unless a worker
+                    // already took it
+                    if (executor.isShutdown() && executor.remove(task)) {
+                        throw new RejectedExecutionException("Executor has been shut down");
+                    }
+                };
+            case ABORT:
+            default:
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
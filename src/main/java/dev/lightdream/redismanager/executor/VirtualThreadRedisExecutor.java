@@ -0,0 +1,38 @@
+package dev.lightdream.redismanager.executor;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Starts a new virtual thread for every task. The library targets Java 8, so the Java 21 factory is looked up at
+ * runtime instead of being linked against.
+ */
+public class VirtualThreadRedisExecutor implements RedisExecutor {
+
+    private final ExecutorService executor;
+
+    public VirtualThreadRedisExecutor() {
+        try {
+            this.executor = (ExecutorService) MethodHandles.publicLookup()
+                    .findStatic(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class))
+                    .invoke();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer. Running on " +
+                    System.getProperty("java.version"), e);
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Unable to create the virtual thread executor", throwable);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
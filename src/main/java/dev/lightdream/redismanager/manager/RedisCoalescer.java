@@ -0,0 +1,48 @@
+package dev.lightdream.redismanager.manager;
+
+import dev.lightdream.redismanager.annotation.Coalesce;
+import dev.lightdream.redismanager.dto.RedisResponse;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the requests of the {@link Coalesce} event classes that are in flight, by a key made of their target and
+ * fields, see {@link dev.lightdream.redismanager.cache.RedisResponseCache#key}.
+ * <p>
+ * A flight is registered before its request is sent and completed with the {@link RedisResponse} as soon as it is
+ * created, so identical requests only ever wait for the response to be created, not for it to be published.
+ */
+class RedisCoalescer {
+
+    private final ClassValue<Boolean> coalesced = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return type.isAnnotationPresent(Coalesce.class);
+        }
+    };
+    private final Map<String, CompletableFuture<RedisResponse<?>>> flights = new ConcurrentHashMap<>();
+
+    boolean isCoalesced(Class<?> eventClass) {
+        return coalesced.get(eventClass);
+    }
+
+    /**
+     * @return the flight of the identical request in flight, or null if the flight was registered for the caller to
+     * send the request
+     */
+    @Nullable
+    CompletableFuture<RedisResponse<?>> join(String key, CompletableFuture<RedisResponse<?>> flight) {
+        return flights.putIfAbsent(key, flight);
+    }
+
+    void leave(String key, CompletableFuture<RedisResponse<?>> flight) {
+        flights.remove(key, flight);
+    }
+
+    int size() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,466 @@
+package dev.lightdream.redismanager.manager;
+
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.dto.RedisConfig;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.BinaryJedisPubSub;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.DefaultJedisSocketFactory;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the subscriber connection alive. The connection is checked with a PING every
+ * {@link RedisConfig#getHeartbeatInterval()} by a heartbeat thread of its own, and a connection that did not answer for
+ * 3 intervals is dropped. Dropped connections are retried on the same thread with an exponential backoff and jitter,
+ * so the nodes do not all reconnect at the same moment after a failover, and all the channels are subscribed again
+ * once reconnected.
+ * <p>
+ * Jedis pub/sub is not thread safe, so the commands are written by one thread at a time. Writing on a broken
+ * connection may block, so they are never written while holding the lock of the connection: subscribe, unsubscribe
+ * and the heartbeat only record what has to be written under it, and whoever holds the write lock writes it. A caller
+ * finding the write lock taken returns at once, the writer writes its commands too before letting it go. The channels
+ * of the connection are compared with the subscribed ones once its first subscription is confirmed, so none of the
+ * channels subscribed while connecting is missed.
+ */
+public class RedisConnectionSupervisor {
+
+    private final RedisConfig config;
+    private final RedisDebugger debugger;
+    private final ChannelNameCache channelNames;
+    private final BiConsumer<byte[], byte[]> messageHandler;
+    private final Consumer<Throwable> connectionLostHandler;
+    private final Set<String> channels = new CopyOnWriteArraySet<>();
+    private final CountDownLatch firstConnection = new CountDownLatch(1);
+    private final Thread thread;
+    private final Thread heartbeat;
+    private final Object lock = new Object();
+    // Held while writing on the connection
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Whether commands may have to be written since the writer last looked
+    private final AtomicBoolean writePending = new AtomicBoolean();
+    private final AtomicBoolean pingPending = new AtomicBoolean();
+
+    private volatile State state = State.CONNECTING;
+    private volatile boolean running = true;
+    private volatile @Nullable Throwable lastError;
+    private volatile Runnable connectedListener = () -> {
+    };
+    private volatile long reconnects;
+    private volatile long lastReply;
+    private int attempt;
+
+    // Guarded by lock
+    private @Nullable Socket socket;
+    private @Nullable BinaryJedisPubSub pubSub;
+    // The channels subscribed on the current connection
+    private final Set<String> subscribed = new HashSet<>();
+    // Whether the first subscription of the current connection was confirmed, commands are only written once it was
+    private boolean confirmed;
+
+    /**
+     * @param messageHandler        called with the channel and the payload of every message received
+     * @param connectionLostHandler called once every time an established connection is lost
+     */
+    public RedisConnectionSupervisor(RedisConfig config, RedisDebugger debugger, ChannelNameCache channelNames,
+                                     BiConsumer<byte[], byte[]> messageHandler,
+                                     Consumer<Throwable> connectionLostHandler) {
+        this.config = config;
+        this.debugger = debugger;
+        this.channelNames = channelNames;
+        this.messageHandler = messageHandler;
+        this.connectionLostHandler = connectionLostHandler;
+
+        this.thread = new Thread(this::run, "RedisManager-Subscriber");
+        this.thread.setDaemon(true);
+        this.heartbeat = new Thread(this::heartbeat, "RedisManager-Heartbeat");
+        this.heartbeat.setDaemon(true);
+    }
+
+    public void start() {
+        thread.start();
+        heartbeat.start();
+    }
+
+    /**
+     * Waits until the subscriber is connected for the first time
+     *
+     * @return true if it connected in time
+     */
+    public boolean awaitConnected(long timeout) throws InterruptedException {
+        return firstConnection.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to the channel, now if connected and after every reconnect
+     */
+    public void subscribe(String channel) {
+        if (channels.add(channel)) {
+            write();
+        }
+    }
+
+    public void unsubscribe(String channel) {
+        if (channels.remove(channel)) {
+            write();
+        }
+    }
+
+    /**
+     * @param listener run on the subscriber thread every time the connection is established, the first time included
+     */
+    public void onConnected(Runnable listener) {
+        this.connectedListener = listener;
+    }
+
+    public Set<String> channels() {
+        return channels;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public boolean isConnected() {
+        return state == State.CONNECTED;
+    }
+
+    /**
+     * @return the error that caused the last disconnect, if any
+     */
+    public @Nullable Throwable lastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the number of times the connection was lost and established again
+     */
+    public long reconnects() {
+        return reconnects;
+    }
+
+    public void shutdown() {
+        running = false;
+        state = State.STOPPED;
+
+        boolean confirmed;
+        synchronized (lock) {
+            confirmed = this.confirmed;
+            if (!confirmed) {
+                // Still waiting for the server, which may never answer
+                drop();
+            }
+        }
+        if (confirmed) {
+            // Unsubscribes from everything
+            write();
+        }
+        thread.interrupt();
+        heartbeat.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            BinaryJedisPubSub pubSub = createPubSub();
+            DefaultJedisClientConfig clientConfig = DefaultJedisClientConfig.builder()
+                    .connectionTimeoutMillis(config.getConnectTimeout())
+                    .socketTimeoutMillis(config.getSocketTimeout())
+                    .password(config.getPassword())
+                    .build();
+            AtomicReference<Socket> socket = new AtomicReference<>();
+
+            // The socket is kept to drop the connection without flushing it, see drop()
+            try (Jedis jedis = new Jedis(new DefaultJedisSocketFactory(
+                    new HostAndPort(config.getHost(), config.getPort()), clientConfig) {
+                @Override
+                public Socket createSocket() {
+                    Socket created = super.createSocket();
+                    socket.set(created);
+                    return created;
+                }
+            }, clientConfig)) {
+                byte[][] subscribeChannels;
+                synchronized (lock) {
+                    if (!running) {
+                        return;
+                    }
+                    this.socket = socket.get();
+                    this.pubSub = pubSub;
+                    subscribed.addAll(channels);
+                    subscribeChannels = subscribed.stream().map(channelNames::encode).toArray(byte[][]::new);
+                }
+                jedis.subscribe(pubSub, subscribeChannels);
+            } catch (Exception e) {
+                lastError = e;
+            } finally {
+                synchronized (lock) {
+                    this.socket = null;
+                    this.pubSub = null;
+                    subscribed.clear();
+                    confirmed = false;
+                }
+            }
+
+            if (!running) {
+                return;
+            }
+
+            onDisconnected();
+            backoff();
+        }
+    }
+
+    private BinaryJedisPubSub createPubSub() {
+        return new BinaryJedisPubSub() {
+            @Override
+            public void onMessage(byte[] channel, byte[] message) {
+                lastReply = System.nanoTime();
+                messageHandler.accept(channel, message);
+            }
+
+            @Override
+            public void onSubscribe(byte[] channel, int subscribedChannels) {
+                lastReply = System.nanoTime();
+                confirm();
+                onConnected();
+                debugger.subscribed(channelNames.decode(channel));
+            }
+
+            @Override
+            public void onUnsubscribe(byte[] channel, int subscribedChannels) {
+                lastReply = System.nanoTime();
+                debugger.unsubscribed(channelNames.decode(channel));
+            }
+
+            @Override
+            public void onPong(byte[] pattern) {
+                lastReply = System.nanoTime();
+            }
+        };
+    }
+
+    /**
+     * Called on the subscriber thread once the first subscription of the connection is confirmed. Catches up with the
+     * channels subscribed and unsubscribed since the connection was opened, as they could not be written before.
+     */
+    private void confirm() {
+        synchronized (lock) {
+            if (confirmed) {
+                return;
+            }
+            confirmed = true;
+        }
+        write();
+    }
+
+    /**
+     * Writes the commands pending on the connection, unless another thread is writing, which then writes them too
+     * before it stops
+     */
+    private void write() {
+        writePending.set(true);
+        // Checked again once unlocked, a caller may have given up on the lock while it was held
+        while (writePending.get() && writeLock.tryLock()) {
+            try {
+                writePending.set(false);
+                writeCommands();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    // Holding writeLock
+    private void writeCommands() {
+        BinaryJedisPubSub pubSub;
+        boolean unsubscribeAll;
+        List<byte[]> subscribe = new ArrayList<>();
+        List<byte[]> unsubscribe = new ArrayList<>();
+
+        synchronized (lock) {
+            pubSub = this.pubSub;
+            if (!confirmed || pubSub == null) {
+                // Written by confirm() once the connection is confirmed
+                return;
+            }
+
+            unsubscribeAll = !running;
+            if (!unsubscribeAll) {
+                for (String channel : channels) {
+                    if (subscribed.add(channel)) {
+                        subscribe.add(channelNames.encode(channel));
+                    }
+                }
+                for (Iterator<String> iterator = subscribed.iterator(); iterator.hasNext(); ) {
+                    String channel = iterator.next();
+                    if (!channels.contains(channel)) {
+                        iterator.remove();
+                        unsubscribe.add(channelNames.encode(channel));
+                    }
+                }
+            }
+        }
+
+        try {
+            if (unsubscribeAll) {
+                pubSub.unsubscribe();
+                return;
+            }
+            if (!subscribe.isEmpty()) {
+                pubSub.subscribe(subscribe.toArray(new byte[0][]));
+            }
+            // An empty unsubscribe would unsubscribe from everything
+            if (!unsubscribe.isEmpty()) {
+                pubSub.unsubscribe(unsubscribe.toArray(new byte[0][]));
+            }
+            if (pingPending.getAndSet(false)) {
+                pubSub.ping();
+            }
+        } catch (Exception ignored) {
+            // The subscriber thread notices the broken connection, all the channels are subscribed again after it
+        }
+    }
+
+    /**
+     * Breaks the connection, the subscriber thread then connects again. Closes the socket instead of disconnecting, as
+     * disconnecting flushes the connection, which may block and may be in use by the writer. Holding lock.
+     */
+    private void drop() {
+        Socket socket = this.socket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (Exception ignored) {
+                // Already broken
+            }
+        }
+    }
+
+    private void onConnected() {
+        if (state == State.CONNECTED) {
+            return;
+        }
+
+        if (state == State.DISCONNECTED && firstConnection.getCount() == 0) {
+            reconnects++;
+            Logger.good("Reconnected to redis server.");
+        }
+
+        attempt = 0;
+        state = State.CONNECTED;
+        firstConnection.countDown();
+        connectedListener.run();
+    }
+
+    private void onDisconnected() {
+        boolean wasConnected = state == State.CONNECTED;
+        state = State.DISCONNECTED;
+
+        if (!wasConnected) {
+            if (attempt == 0) {
+                Logger.error("Unable to connect to redis server. Retrying...");
+            }
+            return;
+        }
+
+        Logger.error("Lost connection to redis server. Reconnecting...");
+        if (debugger.isEnabled() && lastError != null) {
+            //noinspection CallToPrintStackTrace
+            lastError.printStackTrace();
+        }
+
+        connectionLostHandler.accept(lastError);
+    }
+
+    /**
+     * Sleeps between half and the whole of the exponential delay of the current attempt
+     */
+    private void backoff() {
+        long sleep = backoffDelay(config, attempt);
+        attempt++;
+
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            // Interrupted by shutdown
+        }
+    }
+
+    /**
+     * @param attempt the number of attempts that failed in a row so far
+     * @return the time in milliseconds to wait before the next attempt, between half and the whole of the exponential
+     * delay
+     */
+    public static long backoffDelay(RedisConfig config, int attempt) {
+        long delay = Math.min(config.getReconnectMaxDelay(),
+                (long) config.getReconnectBaseDelay() << Math.min(attempt, 20));
+
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * PINGs the connection every interval and drops it if nothing arrived on it for 3 intervals. Runs on a thread of
+     * its own, as writing on a broken connection may block. The connection is checked and dropped under the lock, while
+     * the PING is written outside it like every other command, so a blocked PING blocks neither subscribe nor
+     * unsubscribe. A command blocked on another thread is unblocked once the heartbeat drops the connection, which
+     * closes its socket.
+     */
+    private void heartbeat() {
+        long interval = config.getHeartbeatInterval();
+
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown
+                return;
+            }
+
+            synchronized (lock) {
+                if (!running || !confirmed || pubSub == null) {
+                    continue;
+                }
+
+                if (System.nanoTime() - lastReply > TimeUnit.MILLISECONDS.toNanos(interval * 3)) {
+                    Logger.error("Redis server did not answer the heartbeat, dropping the connection.");
+                    drop();
+                    continue;
+                }
+            }
+
+            pingPending.set(true);
+            write();
+        }
+    }
+
+    public enum State {
+        /**
+         * Was never connected yet
+         */
+        CONNECTING,
+        CONNECTED,
+        /**
+         * Lost the connection, trying to reconnect
+         */
+        DISCONNECTED,
+        STOPPED
+    }
+}
@@ -2,7 +2,13 @@ package dev.lightdream.redismanager.manager;
 
 import dev.lightdream.logger.Debugger;
 import dev.lightdream.messagebuilder.MessageBuilder;
+import dev.lightdream.redismanager.codec.RedisCodec;
+import dev.lightdream.redismanager.event.RedisEvent;
 
+/**
+ * All the methods return before formatting anything when the debugger is disabled, payloads are only decoded for
+ * printing when the debugger is enabled.
+ */
 public class RedisDebugger {
 
     private final MessageBuilder creatingListener = new MessageBuilder("Creating RedisManager with listenID: %id%");
@@ -14,10 +20,12 @@ public class RedisDebugger {
     private final MessageBuilder sendResponse = new MessageBuilder("[Send-Response      ] [%channel%] %response%");
     private final MessageBuilder send = new MessageBuilder("[Send               ] [%channel%] %event%");
     private final MessageBuilder registeringMethod = new MessageBuilder("Registering method %method% from class %class%");
-    private boolean enabled;
+    private final RedisCodec codec;
+    private volatile boolean enabled;
 
-    public RedisDebugger(boolean enabled) {
+    public RedisDebugger(boolean enabled, RedisCodec codec) {
         this.enabled = enabled;
+        this.codec = codec;
     }
 
     public void enable() {
@@ -37,58 +45,116 @@ public class RedisDebugger {
     }
 
     public void creatingListener(String id) {
+        if (!enabled) {
+            return;
+        }
+
         print(creatingListener
                 .parse("id", id)
                 .parse());
     }
 
     public void receiveNotAllowed(String channel) {
+        if (!enabled) {
+            return;
+        }
+
         print(receiveNotAllowed
                 .parse("channel", channel)
                 .parse());
     }
 
-    public void receiveResponse(String channel, String response) {
+    public void receiveResponse(String channel, byte[] response) {
+        if (!enabled) {
+            return;
+        }
+
         print(receiveResponse
                 .parse("channel", channel)
-                .parse("response", response)
+                .parse("response", codec.toString(response))
                 .parse());
     }
 
-    public void receive(String channel, String event) {
+    public void receive(String channel, byte[] event) {
+        if (!enabled) {
+            return;
+        }
+
         print(receive
                 .parse("channel", channel)
-                .parse("event", event)
+                .parse("event", codec.toString(event))
                 .parse());
     }
 
     public void subscribed(String channel) {
+        if (!enabled) {
+            return;
+        }
+
         print(subscribed
                 .parse("channel", channel)
                 .parse());
     }
 
     public void unsubscribed(String channel) {
+        if (!enabled) {
+            return;
+        }
+
         print(unsubscribed
                 .parse("channel", channel)
                 .parse());
     }
 
-    public void sendResponse(String channel, String response) {
+    public void sendResponse(String channel, byte[] response) {
+        if (!enabled) {
+            return;
+        }
+
+        print(sendResponse
+                .parse("channel", channel)
+                .parse("response", codec.toString(response))
+                .parse());
+    }
+
+    public void sendResponse(String channel, RedisEvent<?> response) {
+        if (!enabled) {
+            return;
+        }
+
         print(sendResponse
                 .parse("channel", channel)
-                .parse("response", response)
+                .parse("response", response.serialize())
                 .parse());
     }
 
-    public void send(String channel, String event) {
+    public void send(String channel, byte[] event) {
+        if (!enabled) {
+            return;
+        }
+
         print(send
                 .parse("channel", channel)
-                .parse("event", event)
+                .parse("event", codec.toString(event))
+                .parse());
+    }
+
+    public void send(String channel, RedisEvent<?> event) {
+        if (!enabled) {
+            return;
+        }
+
+        print(send
+                .parse("channel", channel)
+                .parse("event", event.serialize())
                 .parse());
     }
 
     public void registeringMethod(String method, String clazz) {
+        if (!enabled) {
+            return;
+        }
+
         print(registeringMethod
                 .parse("method", method)
                 .parse("class", clazz)
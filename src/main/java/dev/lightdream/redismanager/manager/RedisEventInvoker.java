@@ -0,0 +1,95 @@
+package dev.lightdream.redismanager.manager;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Direct invoker for a {@link dev.lightdream.redismanager.annotation.RedisEventHandler} method, generated once at
+ * registration time so firing an event does not go through {@link Method#invoke(Object, Object...)}.
+ */
+@FunctionalInterface
+public interface RedisEventInvoker {
+
+    MethodType INVOKER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    /**
+     * Creates the fastest invoker available for the method. Public methods of classes visible from this library are
+     * spun into a class implementing this interface using {@link LambdaMetafactory}, which the JIT can inline like a
+     * regular virtual call. Everything else (private methods, static methods, classes from other class loaders)
+     * falls back to a {@link MethodHandle}.
+     *
+     * @param method the handler method. Must take exactly one parameter.
+     */
+    static RedisEventInvoker of(Method method) {
+        if (canSpin(method)) {
+            try {
+                return lambda(method);
+            } catch (Throwable ignored) {
+                // Fallback to the method handle below
+            }
+        }
+
+        return methodHandle(method);
+    }
+
+    static RedisEventInvoker lambda(Method method) throws Throwable {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        CallSite callSite = LambdaMetafactory.metafactory(
+                lookup,
+                "invoke",
+                MethodType.methodType(RedisEventInvoker.class),
+                INVOKER_TYPE,
+                lookup.unreflect(method),
+                MethodType.methodType(void.class, method.getDeclaringClass(), method.getParameterTypes()[0])
+        );
+        return (RedisEventInvoker) callSite.getTarget().invoke();
+    }
+
+    static RedisEventInvoker methodHandle(Method method) {
+        MethodHandle handle;
+        try {
+            method.setAccessible(true);
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Unable to access handler " + method, e);
+        }
+
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+
+        MethodHandle invoker = handle.asType(INVOKER_TYPE);
+        return (parentObject, event) -> {
+            // Must stay a statement, as an expression the call site would be typed (Object, Object)Object
+            invoker.invokeExact(parentObject, event);
+        };
+    }
+
+    static boolean canSpin(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || !Modifier.isPublic(method.getModifiers()) ||
+                !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return false;
+        }
+
+        // The generated class lives next to this interface, so it has to be able to link against the handler
+        ClassLoader classLoader = RedisEventInvoker.class.getClassLoader();
+        return isVisible(method.getDeclaringClass(), classLoader) &&
+                isVisible(method.getParameterTypes()[0], classLoader);
+    }
+
+    static boolean isVisible(Class<?> clazz, ClassLoader classLoader) {
+        try {
+            return Class.forName(clazz.getName(), false, classLoader) == clazz;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    void invoke(Object parentObject, Object event) throws Throwable;
+
+}
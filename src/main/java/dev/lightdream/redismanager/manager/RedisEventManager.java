@@ -6,15 +6,22 @@ import dev.lightdream.redismanager.event.RedisEvent;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class RedisEventManager {
 
-    private final List<EventMethod> eventMethods = Collections.synchronizedList(new ArrayList<>());
+    // Copy-on-write, only replaced while holding the lock of this object
+    private volatile DispatchTable dispatchTable = new DispatchTable(Collections.emptyList());
+    private volatile Runnable handlersChanged = () -> {
+    };
 
     public RedisEventManager() {
         RedisManager.instance().reflections()
@@ -23,7 +30,6 @@ public class RedisEventManager {
     }
 
     @SneakyThrows
-    @SuppressWarnings("rawtypes")
     private void register(Method method, boolean fromConstructor, Object parentObject) {
         if (!method.isAnnotationPresent(RedisEventHandler.class)) {
             Logger.error("Method " + method.getName() + " from class " + method.getDeclaringClass() +
@@ -41,7 +47,7 @@ public class RedisEventManager {
         if (parentObject == null) {
             Class<?> parentClass = method.getDeclaringClass();
 
-            for (EventMethod eventMethod : eventMethods) {
+            for (EventMethod eventMethod : dispatchTable.eventMethods) {
                 if (eventMethod.parentObject.getClass().equals(parentClass)) {
                     parentObject = eventMethod.parentObject;
                 }
@@ -61,16 +67,23 @@ public class RedisEventManager {
 
         Class<?> paramClass = params[0];
 
-        if (!RedisEvent.class.isAssignableFrom(paramClass)) {
+        // Interfaces are allowed, they will match all the events that implement them
+        if (!RedisEvent.class.isAssignableFrom(paramClass) && !paramClass.isInterface()) {
             Logger.warn("Parameter from method " + method.getName() + " from class " + method.getDeclaringClass() + " is not an instance of RedisEvent");
             return;
         }
 
-        //noinspection unchecked
-        Class<? extends RedisEvent> redisEventClass = (Class<? extends RedisEvent>) paramClass;
+        method.setAccessible(true);
+
+        EventMethod eventMethod = new EventMethod(parentObject, paramClass, method, redisEventHandler.order(),
+                RedisEventInvoker.of(method));
 
-        EventMethod eventMethod = new EventMethod(parentObject, redisEventClass, method);
-        eventMethods.add(eventMethod);
+        synchronized (this) {
+            List<EventMethod> eventMethods = new ArrayList<>(dispatchTable.eventMethods);
+            eventMethods.add(eventMethod);
+            dispatchTable = new DispatchTable(eventMethods);
+        }
+        handlersChanged.run();
     }
 
     @SuppressWarnings("unused")
@@ -86,31 +99,42 @@ public class RedisEventManager {
 
     @SuppressWarnings("unused")
     public void unregister(Object object) {
-        eventMethods.removeIf(eventObject -> eventObject.parentObject.equals(object));
+        synchronized (this) {
+            List<EventMethod> eventMethods = new ArrayList<>(dispatchTable.eventMethods);
+            if (!eventMethods.removeIf(eventObject -> eventObject.parentObject.equals(object))) {
+                return;
+            }
+            dispatchTable = new DispatchTable(eventMethods);
+        }
+        handlersChanged.run();
     }
 
-    @SuppressWarnings({"rawtypes", "unused"})
-    public void fire(RedisEvent event) {
-        eventMethods.sort((o1, o2) -> {
-            RedisEventHandler annotation1 = o1.method.getAnnotation(RedisEventHandler.class);
-            RedisEventHandler annotation2 = o2.method.getAnnotation(RedisEventHandler.class);
-            return annotation1.order() - annotation2.order();
-        });
-
-        //noinspection ForLoopReplaceableByForEach
-        for (int i = 0; i < eventMethods.size(); i++) {
-            EventMethod eventMethod = eventMethods.get(i);
+    /**
+     * @return the parameter types of the registered handlers
+     */
+    public Set<Class<?>> handledClasses() {
+        Set<Class<?>> classes = new HashSet<>();
+        for (EventMethod eventMethod : dispatchTable.eventMethods) {
+            classes.add(eventMethod.eventClass);
+        }
+        return classes;
+    }
 
-            if (!event.getClass().isAssignableFrom(eventMethod.eventClass)) {
-                continue;
-            }
+    /**
+     * @param listener run after every register / unregister, outside of the lock of this object
+     */
+    void onHandlersChanged(Runnable listener) {
+        this.handlersChanged = listener;
+    }
 
-            eventMethod.method.setAccessible(true);
+    @SuppressWarnings({"rawtypes", "unused"})
+    public void fire(RedisEvent event) {
+        for (EventMethod eventMethod : dispatchTable.getHandlers(event.getClass())) {
             try {
-                eventMethod.method.invoke(eventMethod.parentObject, eventMethod.eventClass.cast(event));
-            } catch (IllegalAccessException | InvocationTargetException e) {
-                e.printStackTrace();
-                e.getCause().printStackTrace();
+                eventMethod.invoker.invoke(eventMethod.parentObject, event);
+            } catch (Throwable throwable) {
+                //noinspection CallToPrintStackTrace
+                throwable.printStackTrace();
                 Logger.error("Error while firing event " + event.getClass().getName());
                 Logger.error("parentObject class:" + eventMethod.parentObject.getClass().getName());
                 Logger.error("parentObject:" + eventMethod.parentObject);
@@ -120,11 +144,50 @@ public class RedisEventManager {
         }
     }
 
-    @SuppressWarnings("rawtypes")
     @AllArgsConstructor
     public static class EventMethod {
         public Object parentObject;
-        public Class<? extends RedisEvent> eventClass;
+        public Class<?> eventClass;
         public Method method;
+        public int order;
+        public RedisEventInvoker invoker;
+    }
+
+    /**
+     * Immutable snapshot of the registered handlers, sorted by {@link RedisEventHandler#order()}.
+     * The handlers matching a concrete event class (including the ones listening for a superclass or an interface)
+     * are resolved the first time that class is fired and cached until the next register / unregister.
+     */
+    private static class DispatchTable {
+
+        private static final EventMethod[] EMPTY = new EventMethod[0];
+
+        private final List<EventMethod> eventMethods;
+        private final Map<Class<?>, EventMethod[]> handlers = new ConcurrentHashMap<>();
+
+        private DispatchTable(List<EventMethod> eventMethods) {
+            List<EventMethod> sorted = new ArrayList<>(eventMethods);
+            // Stable sort, handlers with the same order keep their registration order
+            sorted.sort(Comparator.comparingInt(eventMethod -> eventMethod.order));
+            this.eventMethods = Collections.unmodifiableList(sorted);
+        }
+
+        private EventMethod[] getHandlers(Class<?> eventClass) {
+            EventMethod[] result = handlers.get(eventClass);
+            if (result == null) {
+                result = handlers.computeIfAbsent(eventClass, this::resolve);
+            }
+            return result;
+        }
+
+        private EventMethod[] resolve(Class<?> eventClass) {
+            List<EventMethod> result = new ArrayList<>();
+            for (EventMethod eventMethod : eventMethods) {
+                if (eventMethod.eventClass.isAssignableFrom(eventClass)) {
+                    result.add(eventMethod);
+                }
+            }
+            return result.isEmpty() ? EMPTY : result.toArray(EMPTY);
+        }
     }
 }
\ No newline at end of file
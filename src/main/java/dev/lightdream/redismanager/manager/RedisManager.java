@@ -1,26 +1,63 @@
 package dev.lightdream.redismanager.manager;
 
+import com.google.gson.Gson;
 import dev.lightdream.filemanager.GsonSettings;
-import dev.lightdream.lambda.ScheduleManager;
 import dev.lightdream.logger.Debugger;
 import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.annotation.CacheResponse;
+import dev.lightdream.redismanager.annotation.Coalesce;
+import dev.lightdream.redismanager.cache.RedisResponseCache;
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.codec.CompressingRedisCodec;
+import dev.lightdream.redismanager.codec.JsonRedisCodec;
+import dev.lightdream.redismanager.codec.RedisCodec;
 import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.dto.RedisGatherResponse;
 import dev.lightdream.redismanager.dto.RedisResponse;
 import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.InvalidateCacheEvent;
 import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import dev.lightdream.redismanager.executor.PartitionedRedisExecutor;
+import dev.lightdream.redismanager.executor.RedisExecutor;
+import dev.lightdream.redismanager.metrics.EventMetrics;
+import dev.lightdream.redismanager.metrics.RedisMetrics;
+import dev.lightdream.redismanager.outbox.RedisOutbox;
+import dev.lightdream.redismanager.trace.RedisTracer;
+import dev.lightdream.redismanager.transport.InMemoryBroker;
+import dev.lightdream.redismanager.transport.PubSubTransport;
+import dev.lightdream.redismanager.transport.RedisClusterTransport;
+import dev.lightdream.redismanager.transport.RedisStreamTransport;
+import dev.lightdream.redismanager.transport.RedisTransport;
+import dev.lightdream.redismanager.transport.TransportType;
 import dev.lightdream.redismanager.type_adapter.RedisEventTypeAdapter;
+import dev.lightdream.redismanager.type_adapter.RedisEventTypes;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import org.jetbrains.annotations.Nullable;
 import org.reflections.Reflections;
-import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
-import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Protocol;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Collector;
 
 @Getter
 @Accessors(chain = true, fluent = true)
@@ -28,40 +65,97 @@ public class RedisManager {
 
     private static @Getter RedisManager instance;
 
-    private final Queue<RedisResponse<?>> awaitingResponses;
+    private final Map<Long, RedisResponse<?>> awaitingResponses;
     private final RedisEventManager redisEventManager;
+    private final RedisTimeoutManager timeoutManager;
+    private final RedisMetrics metrics;
+    private final RedisTracer tracer;
     private final RedisDebugger debugger;
     private final GsonSettings gsonSettings;
+    private final RedisEventTypeAdapter redisEventTypeAdapter;
+    private final Gson gson;
+    private final CompressingRedisCodec codec;
+    private final ChannelNameCache channelNames = new ChannelNameCache();
     private final RedisConfig redisConfig;
     private final Reflections reflections;
+    private final RedisExecutor handlerExecutor;
+    private final PartitionedRedisExecutor partitionedExecutor;
     private final boolean debug;
     private final boolean localOnly;
     private JedisPool jedisPool;
-    private Thread redisTread;
-    private JedisPubSub subscriberJedisPubSub;
-    private long id;
-
+    private @Nullable RedisTransport transport;
+    private @Nullable RedisPublisher publisher;
+    private @Nullable RedisOutbox outbox;
+    private final AtomicLong idCounter = new AtomicLong();
+    private final @Getter(AccessLevel.NONE) RedisCoalescer coalescer = new RedisCoalescer();
+    private final RedisResponseCache responseCache = new RedisResponseCache();
+    private final String broadcastChannel;
+    // Event class name -> broadcast channel of the class
+    private final @Getter(AccessLevel.NONE) Map<String, String> interestChannelNames = new ConcurrentHashMap<>();
+    private @Getter(AccessLevel.NONE) Set<String> interestChannels = Collections.emptySet();
+
+    /**
+     * @param codec              encodes the events published on Redis, {@link JsonRedisCodec} by default. Payloads
+     *                           are compressed on top of it, see {@link RedisConfig#getCompressionThreshold()}
+     * @param handlerExecutor    runs the handlers of the events received from Redis, see {@link RedisExecutor} for the
+     *                           available modes
+     * @param partitionLanes     the number of lanes events with a {@link RedisEvent#getPartitionKey()} are spread on
+     * @param partitionQueueSize the maximum number of events waiting in a single partition lane
+     * @param transportFactory   creates the transport the events are published and received with, null to use
+     *                           Redis with the {@link RedisConfig#getTransport()} of the config. Use
+     *                           {@link InMemoryBroker#connect} to simulate several nodes in the same JVM.
+     */
     @lombok.Builder(builderClassName = "Builder")
-    public RedisManager(GsonSettings gsonSettings, RedisConfig redisConfig, Reflections reflections, boolean debug,
-                        boolean localOnly) {
+    public RedisManager(GsonSettings gsonSettings, RedisConfig redisConfig, Reflections reflections, RedisCodec codec,
+                        RedisExecutor handlerExecutor, int partitionLanes, int partitionQueueSize, boolean debug,
+                        boolean localOnly, @Nullable RedisTransport.Factory transportFactory) {
         instance = this;
 
         this.gsonSettings = gsonSettings;
         this.redisConfig = redisConfig;
         this.reflections = reflections;
+        this.codec = new CompressingRedisCodec(codec, redisConfig.getCompressionThreshold(),
+                redisConfig.getCompressionLevel());
+        this.handlerExecutor = handlerExecutor;
+        this.partitionedExecutor = new PartitionedRedisExecutor(partitionLanes, partitionQueueSize);
         this.debug = debug;
         this.localOnly = localOnly;
+        this.broadcastChannel = redisConfig.getChannelBase() + "#*";
+
+        redisEventTypeAdapter = new RedisEventTypeAdapter(gsonSettings, this::getResponseType);
+        gson = redisEventTypeAdapter.gson();
+        this.codec.init(this);
 
-        debugger = new RedisDebugger(debug());
+        debugger = new RedisDebugger(debug(), this.codec);
         debugger.creatingListener(redisConfig().getChannel());
         redisEventManager = new RedisEventManager();
-        awaitingResponses = new ConcurrentLinkedQueue<>();
-
-        new RedisEventTypeAdapter().register(gsonSettings);
+        awaitingResponses = new ConcurrentHashMap<>();
+        metrics = new RedisMetrics(redisConfig().getRedisID(), redisConfig().isMetricsJmx(), awaitingResponses::size,
+                () -> this.handlerExecutor.queueSize() + partitionedExecutor.queueSize(),
+                () -> publisher == null ? 0 : publisher.queueSize(),
+                () -> outbox == null ? 0 : outbox.pending());
+        tracer = new RedisTracer(redisConfig(), this.codec::toString);
+        timeoutManager = new RedisTimeoutManager(redisConfig().getTimeoutTickDuration(),
+                redisConfig().getTimeoutWheelSize());
 
         if (!localOnly()) {
-            connectJedis();
-            subscribe();
+            if (transportFactory == null) {
+                if (redisConfig().getTransport() != TransportType.CLUSTER) {
+                    connectJedis();
+                }
+                transportFactory = this::createRedisTransport;
+            }
+            transport = transportFactory.create(this, this::onMessage, this::onConnectionLost);
+
+            if (redisConfig().isAsyncPublish()) {
+                publisher = new RedisPublisher(transport, redisConfig().getPublisherThreads(),
+                        redisConfig().getPublishQueueSize(), redisConfig().getPublishBatchSize(),
+                        redisConfig().getPublishLinger(), redisConfig().getPublishBackpressure());
+            }
+            if (redisConfig().isOutbox()) {
+                createOutbox(transport);
+            }
+            subscribe(transport);
         }
     }
 
@@ -70,16 +164,190 @@ public class RedisManager {
                 .gsonSettings(new GsonSettings() )
                 .redisConfig(new RedisConfig())
                 .reflections(new Reflections())
+                .codec(new JsonRedisCodec())
+                .handlerExecutor(RedisExecutor.scheduleManager())
+                .partitionLanes(Runtime.getRuntime().availableProcessors())
+                .partitionQueueSize(1024)
                 .debug(false)
-                .localOnly(false);
+                .localOnly(false)
+                .transportFactory(null);
     }
 
     public <T> RedisResponse<T> send(RedisEvent<T> event) {
+        return send(event, redisConfig().getTimeout());
+    }
+
+    /**
+     * @param timeout the time in milliseconds after which the response is marked as timed out and evicted
+     */
+    public <T> RedisResponse<T> send(RedisEvent<T> event, int timeout) {
+        RedisResponseCache.Region region = responseCache.region(event.getClass());
+        if (region != null) {
+            return sendCached(event, timeout, region);
+        }
+        return sendUncached(event, timeout);
+    }
+
+    private <T> RedisResponse<T> sendUncached(RedisEvent<T> event, int timeout) {
+        if (coalescer.isCoalesced(event.getClass())) {
+            return sendCoalesced(event, timeout);
+        }
+        return send(event, timeout, id -> new RedisResponse<>(id, RedisEventTypes.getResponseType(event.getClass())));
+    }
+
+    /**
+     * Answers the request of a {@link CacheResponse} event from the cache, or sends it and caches its response
+     */
+    private <T> RedisResponse<T> sendCached(RedisEvent<T> event, int timeout, RedisResponseCache.Region region) {
+        String key = RedisResponseCache.key(event, gson);
+        EventMetrics eventMetrics = metrics.event(event.getClass());
+
+        Type responseType = RedisEventTypes.getResponseType(event.getClass());
+
+        RedisResponseCache.CachedResponse cached = region.get(key);
+        if (cached != null) {
+            eventMetrics.cacheHit();
+            RedisResponse<T> redisResponse = new RedisResponse<>(-1, responseType);
+            //noinspection unchecked
+            redisResponse.respond((T) cached.response(gson), cached.className());
+            // Not published
+            redisResponse.getPublishFuture().complete(0L);
+            return redisResponse;
+        }
+
+        eventMetrics.cacheMiss();
+        long generation = region.generation();
+        RedisResponse<T> redisResponse = sendUncached(event, timeout);
+        redisResponse.getFuture().thenAccept(response -> region.put(key, response, responseType, gson, generation));
+        return redisResponse;
+    }
+
+    /**
+     * Removes the cached response of the request on every node, see {@link CacheResponse}
+     */
+    @SuppressWarnings("unused")
+    public void invalidateCache(RedisEvent<?> request) {
+        invalidateCache(new InvalidateCacheEvent(request));
+    }
+
+    /**
+     * Removes every cached response of the event class on every node, see {@link CacheResponse}
+     */
+    @SuppressWarnings("unused")
+    public void invalidateCache(Class<? extends RedisEvent<?>> eventClass) {
+        invalidateCache(new InvalidateCacheEvent(eventClass));
+    }
+
+    /**
+     * Applies the invalidation locally and broadcasts it without waiting for a response
+     */
+    private void invalidateCache(InvalidateCacheEvent event) {
+        responseCache.invalidate(event.getEventClass(), event.getKey());
+        if (localOnly()) {
+            return;
+        }
+
         event.setOriginator(redisConfig().getChannel());
+        event.setManager(this);
+        byte[] payload = codec.encode(event);
+        debugger.send(event.getRedisTarget(), payload);
+        metrics.event(InvalidateCacheEvent.class).sent(payload.length);
+
+        try {
+            publish(channel(event), payload).whenComplete((receivers, throwable) -> {
+                if (throwable != null && debugger.isEnabled()) {
+                    //noinspection CallToPrintStackTrace
+                    throwable.printStackTrace();
+                }
+            });
+        } catch (Exception e) {
+            Logger.error("Unable to broadcast the invalidation of the cached " + event.getEventClass() + " responses");
+            if (debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Sends the request of a {@link Coalesce} event, or returns the response of the identical request in flight
+     */
+    private <T> RedisResponse<T> sendCoalesced(RedisEvent<T> event, int timeout) {
+        // Built from the fields, encoding the event would compress it and count it in the codec metrics
+        String key = RedisResponseCache.key(event, gson);
+
+        CompletableFuture<RedisResponse<?>> flight = new CompletableFuture<>();
+        CompletableFuture<RedisResponse<?>> inFlight = coalescer.join(key, flight);
+        if (inFlight != null) {
+            metrics.event(event.getClass()).coalesced();
+            return follow(inFlight.join(), event, timeout);
+        }
+
+        RedisResponse<T> redisResponse;
+        try {
+            redisResponse = send(event, timeout, id -> {
+                RedisResponse<T> response = new RedisResponse<>(id, RedisEventTypes.getResponseType(event.getClass()));
+                flight.complete(response);
+                return response;
+            });
+        } catch (RuntimeException e) {
+            coalescer.leave(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+
+        redisResponse.getFuture().whenComplete((response, throwable) -> coalescer.leave(key, flight));
+        return redisResponse;
+    }
+
+    /**
+     * @return a response of its own for a coalesced request, completed with the response of the identical request in
+     * flight or timed out after the timeout of this request
+     */
+    private <T> RedisResponse<T> follow(RedisResponse<?> leader, RedisEvent<T> event, int timeout) {
+        RedisResponse<T> redisResponse = new RedisResponse<>(leader.getId(),
+                RedisEventTypes.getResponseType(event.getClass()));
+        RedisTimeoutManager.Timeout timeoutHandle = timeoutManager.schedule(redisResponse::timeout, timeout);
+        redisResponse.getFuture().whenComplete((response, throwable) -> timeoutHandle.cancel());
+
+        leader.getFuture().whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                redisResponse.getFuture().completeExceptionally(throwable);
+                return;
+            }
+            redisResponse.respond(leader);
+        });
+        leader.getPublishFuture().whenComplete((receivers, throwable) -> {
+            if (throwable != null) {
+                redisResponse.getPublishFuture().completeExceptionally(throwable);
+                return;
+            }
+            redisResponse.getPublishFuture().complete(receivers);
+        });
+        return redisResponse;
+    }
+
+    /**
+     * Sends a request to several nodes, usually to {@code *}, and folds their responses into the collector as they
+     * arrive. See {@link RedisGatherResponse} for when the result is completed.
+     *
+     * @param limit   the number of responses after which the result is completed, 0 to wait for every node that
+     *                received the request
+     * @param timeout the time in milliseconds after which the result is completed with the responses received so far
+     */
+    public <T, A, R> RedisGatherResponse<T, R> gather(RedisEvent<T> event, int limit, int timeout,
+                                                      Collector<? super T, A, R> collector) {
+        return send(event, timeout, id -> new RedisGatherResponse<>(id,
+                RedisEventTypes.getResponseType(event.getClass()), limit, collector));
+    }
+
+    private <T, R extends RedisResponse<?>> R send(RedisEvent<T> event, int timeout, LongFunction<R> responseFactory) {
+        event.setOriginator(redisConfig().getChannel());
+        event.setManager(this);
 
         if (event instanceof ResponseEvent) {
             if (event.getRedisTarget().equals(event.getOriginator())) {
-                debugger.sendResponse("LOCAL", event.serialize());
+                debugger.sendResponse("LOCAL", event);
                 redisEventManager.fire(event);
 
                 ResponseEvent responseEvent = (ResponseEvent) event;
@@ -93,10 +361,18 @@ public class RedisManager {
                 return null;
             }
 
-            debugger.sendResponse(event.getRedisTarget(), event.serialize());
+            byte[] payload = codec.encode(event);
+            debugger.sendResponse(event.getRedisTarget(), payload);
+            metrics.event(ResponseEvent.class).sent(payload.length);
+            tracer.send(ResponseEvent.class.getName(), event.getRedisTarget(), event.getId(), payload);
 
-            try (Jedis jedis = jedisPool.getResource()) {
-                jedis.publish(event.getRedisTarget(), event.serialize());
+            try {
+                publish(event.getRedisTarget(), payload).whenComplete((receivers, throwable) -> {
+                    if (throwable != null && debugger.isEnabled()) {
+                        //noinspection CallToPrintStackTrace
+                        throwable.printStackTrace();
+                    }
+                });
             } catch (Exception e) {
                 if (debugger.isEnabled()) {
                     //noinspection CallToPrintStackTrace
@@ -107,147 +383,443 @@ public class RedisManager {
             return null;
         }
 
-        id++;
-        event.setId(id);
-
-        RedisResponse<T> redisResponse = new RedisResponse<>(event.getId());
-        awaitingResponses.add(redisResponse);
+        event.setId(idCounter.incrementAndGet());
+        EventMetrics eventMetrics = metrics.event(event.getClass());
+        long sentAt = System.nanoTime();
+
+        R redisResponse = responseFactory.apply(event.getId());
+        awaitingResponses.put(redisResponse.getId(), redisResponse);
+        RedisTimeoutManager.Timeout timeoutHandle = timeoutManager.schedule(redisResponse::timeout, timeout);
+        // Completion, timeout and cancellation all go through the future, so this is the only place that has to
+        // evict the entry
+        redisResponse.getFuture().whenComplete((response, throwable) -> {
+            timeoutHandle.cancel();
+            awaitingResponses.remove(redisResponse.getId(), redisResponse);
+
+            long elapsed = System.nanoTime() - sentAt;
+            if (throwable == null) {
+                eventMetrics.responded(elapsed);
+                tracer.response(event.getClassName(), event.getRedisTarget(), event.getId(), elapsed);
+            } else if (throwable instanceof TimeoutException) {
+                eventMetrics.timedOut();
+                onTimeout(event, elapsed);
+            } else {
+                eventMetrics.failed();
+            }
+        });
 
         if (event.getRedisTarget().equals(event.getOriginator())) {
-            debugger.send("LOCAL", event.serialize());
-            redisEventManager.fire(event);
+            debugger.send("LOCAL", event);
+            eventMetrics.sent(0);
+            redisResponse.getPublishFuture().complete(1L);
+            fire(event, eventMetrics);
 
             return redisResponse;
         }
 
-        debugger.send(event.getRedisTarget(), event.serialize());
+        if (isDisconnected() && outbox == null) {
+            // The response could not arrive anyway
+            JedisConnectionException exception = new JedisConnectionException("Not connected to redis server");
+            redisResponse.getPublishFuture().completeExceptionally(exception);
+            redisResponse.getFuture().completeExceptionally(exception);
+            return redisResponse;
+        }
+
+        // Encoded once, the same payload is printed by the debugger and published
+        byte[] payload = codec.encode(event);
+        debugger.send(event.getRedisTarget(), payload);
+        eventMetrics.sent(payload.length);
+        tracer.send(event.getClassName(), event.getRedisTarget(), event.getId(), payload);
+
+        // Keeps the order of the events while the outbox is published
+        if (outbox != null && (isDisconnected() || !outbox.isEmpty())) {
+            boolean disconnected = isDisconnected();
+            // The response is left to the timeout, the event is handled once the outbox is replayed
+            if (storeInOutbox(event, payload, redisResponse)) {
+                if (!disconnected) {
+                    // Published right away behind the pending payloads instead of on the next flush
+                    outbox.replay();
+                }
+                return redisResponse;
+            }
+            if (disconnected) {
+                JedisConnectionException exception = new JedisConnectionException("Not connected to redis server");
+                redisResponse.getPublishFuture().completeExceptionally(exception);
+                redisResponse.getFuture().completeExceptionally(exception);
+                return redisResponse;
+            }
+        }
 
-        try (Jedis jedis = jedisPool.getResource()) {
-            jedis.publish(event.getRedisTarget(), event.serialize());
+        CompletableFuture<Long> published;
+        try {
+            published = publish(channel(event), payload);
         } catch (JedisConnectionException e) {
+            if (storeInOutbox(event, payload, redisResponse)) {
+                return redisResponse;
+            }
+            redisResponse.getPublishFuture().completeExceptionally(e);
+            redisResponse.getFuture().completeExceptionally(e);
             throw new RuntimeException("Unable to publish channel message", e);
         }
 
+        published.whenComplete((receivers, throwable) -> {
+            if (throwable instanceof JedisConnectionException && storeInOutbox(event, payload, redisResponse)) {
+                return;
+            }
+            if (throwable != null) {
+                redisResponse.getPublishFuture().completeExceptionally(throwable);
+                // No need to wait for the timeout, the request never left this node
+                redisResponse.getFuture().completeExceptionally(throwable);
+                return;
+            }
+            redisResponse.getPublishFuture().complete(receivers);
+        });
+
         return redisResponse;
     }
 
+    /**
+     * Stops the threads and closes the connections of this manager, in the reverse order they were started. The
+     * payloads queued by the {@link RedisPublisher} are published first, for up to
+     * {@link RedisConfig#getShutdownTimeout()}, and the outbox keeps its pending payloads for the next start. The
+     * requests still waiting for a response then fail. The handler executor is left to its owner.
+     */
+    public void shutdown() {
+        long deadline = System.currentTimeMillis() + redisConfig().getShutdownTimeout();
+        try {
+            if (publisher != null) {
+                publisher.shutdown();
+                if (!publisher.awaitTermination(deadline - System.currentTimeMillis())) {
+                    Logger.error("Could not publish the queued events in time, they are lost.");
+                }
+            }
+            // After the publisher, which stores the payloads it could not publish in the outbox
+            if (outbox != null) {
+                outbox.shutdown();
+                outbox.awaitTermination(deadline - System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (transport != null) {
+            transport.shutdown();
+        }
+        if (jedisPool != null) {
+            jedisPool.close();
+        }
+
+        IllegalStateException exception = new IllegalStateException("RedisManager has been shut down");
+        for (RedisResponse<?> response : awaitingResponses.values()) {
+            response.getFuture().completeExceptionally(exception);
+        }
+        timeoutManager.shutdown();
+        partitionedExecutor.shutdown();
+        metrics.unregister();
+    }
+
+    /**
+     * @return true if the event was stored in the outbox, to be published once Redis is reachable
+     */
+    private boolean storeInOutbox(RedisEvent<?> event, byte[] payload, RedisResponse<?> redisResponse) {
+        if (outbox == null || event.getOutboxTtl() <= 0) {
+            return false;
+        }
+
+        CompletableFuture<Long> stored = outbox.append(channelNames.encode(channel(event)), payload,
+                event.getOutboxTtl());
+        if (stored == null) {
+            Logger.error("The outbox is full, " + event.getClassName() + " could not be stored.");
+            return false;
+        }
+
+        stored.whenComplete((receivers, throwable) -> {
+            if (throwable != null) {
+                redisResponse.getPublishFuture().completeExceptionally(throwable);
+                return;
+            }
+            redisResponse.getPublishFuture().complete(receivers);
+        });
+        return true;
+    }
+
+    private void createOutbox(RedisTransport transport) {
+        try {
+            outbox = new RedisOutbox(Paths.get(redisConfig().getOutboxDirectory()),
+                    redisConfig().getOutboxSegmentSize(), redisConfig().getOutboxMaxSegments(),
+                    redisConfig().getOutboxFlushInterval(), transport, transport::isConnected);
+            transport.onConnected(outbox::replay);
+        } catch (IOException e) {
+            Logger.error("Unable to open the outbox, events sent while Redis is unreachable will be lost.");
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return true if the connection to Redis is known to be down
+     */
+    public boolean isDisconnected() {
+        if (transport == null) {
+            return false;
+        }
+
+        RedisConnectionSupervisor.State state = transport.state();
+        return state == RedisConnectionSupervisor.State.DISCONNECTED ||
+                state == RedisConnectionSupervisor.State.STOPPED;
+    }
+
+    /**
+     * Publishes through the {@link RedisPublisher} if {@link RedisConfig#isAsyncPublish()} is enabled, otherwise
+     * publishes on the calling thread
+     *
+     * @return a future completed with the number of subscribers that received the payload, or with 1 once the payload
+     * was added to the stream when using {@link TransportType#STREAMS}
+     */
+    private CompletableFuture<Long> publish(String target, byte[] payload) {
+        byte[] channel = channelNames.encode(target);
+        if (publisher != null) {
+            return publisher.publish(channel, payload);
+        }
+
+        if (transport == null) {
+            throw new IllegalStateException("Only local events can be sent by a local only manager");
+        }
+        return CompletableFuture.completedFuture(transport.publish(channel, payload));
+    }
+
+    private RedisTransport createRedisTransport(RedisManager manager, BiConsumer<byte[], byte[]> messageHandler,
+                                                Consumer<Throwable> connectionLostHandler) {
+        if (redisConfig().getTransport() == TransportType.CLUSTER) {
+            return new RedisClusterTransport(redisConfig(), debugger, channelNames, messageHandler,
+                    connectionLostHandler);
+        }
+        if (redisConfig().getTransport() == TransportType.STREAMS) {
+            return new RedisStreamTransport(redisConfig(), debugger, channelNames, () -> jedisPool.getResource(),
+                    messageHandler, connectionLostHandler);
+        }
+        return new PubSubTransport(redisConfig(), debugger, channelNames, jedisPool, messageHandler,
+                connectionLostHandler);
+    }
+
     private void connectJedis() {
         if (jedisPool != null) {
             jedisPool.destroy();
         }
 
         JedisPoolConfig jedisConfig = new JedisPoolConfig();
-        jedisConfig.setMaxTotal(16);
+        jedisConfig.setMaxTotal(redisConfig().getMaxConnections());
 
         jedisPool = new JedisPool(
                 jedisConfig,
                 redisConfig().getHost(),
                 redisConfig().getPort(),
-                0,
-                redisConfig().getPassword()
+                redisConfig().getConnectTimeout(),
+                redisConfig().getSocketTimeout(),
+                redisConfig().getPassword(),
+                Protocol.DEFAULT_DATABASE,
+                null
         );
     }
 
-    @SuppressWarnings("rawtypes")
+    /**
+     * Removes and returns the request that the response is addressed to. The removal is atomic, so a response can
+     * only ever be matched once. Requests awaiting {@link RedisResponse#isMultiple() several responses} are only
+     * returned, they are removed once complete. Package private for the benchmarks.
+     */
     @Nullable
-    private RedisResponse<?> getResponse(ResponseEvent command) {
-        //Remove streams, these are slow when called a lot
-        for (RedisResponse response : awaitingResponses) {
-            if (response.getId() == command.getId()) {
-                return response;
-            }
+    RedisResponse<?> getResponse(ResponseEvent command) {
+        RedisResponse<?> response = awaitingResponses.get(command.getId());
+        if (response == null || response.isMultiple()) {
+            // Removed once its future is completed
+            return response;
         }
-
-        return null;
+        return awaitingResponses.remove(command.getId(), response) ? response : null;
     }
 
-    private void subscribe() {
-        subscriberJedisPubSub = new JedisPubSub() {
+    /**
+     * @return the type of the response awaited for the request or null if no response is awaited
+     */
+    private @Nullable Type getResponseType(long id) {
+        RedisResponse<?> response = awaitingResponses.get(id);
+        return response == null ? null : response.getType();
+    }
 
-            public void onMessage(String channel, final String command) {
-                try {
-                    onMessageReceive(channel, command);
-                } catch (Throwable throwable) {
-                    if (Debugger.isEnabled()) {
-                        //noinspection CallToPrintStackTrace
-                        throwable.printStackTrace();
-                    }
+    private void subscribe(RedisTransport transport) {
+        transport.subscribe(redisConfig().getChannel());
+        transport.subscribe(redisConfig().getChannelBase() + "#*");
+        for (String target : redisConfig().getStreamGroups()) {
+            transport.subscribeShared(target.contains("#") ? target : redisConfig().getChannelBase() + "#" + target);
+        }
+        if (redisConfig().isInterestChannels()) {
+            updateInterestChannels();
+            redisEventManager.onHandlersChanged(this::updateInterestChannels);
+        }
+        transport.start();
 
-                    Logger.error("There was an error while receiving a message from Redis.");
-                }
+        try {
+            if (!transport.awaitConnected(redisConfig().getConnectTimeout())) {
+                Logger.error("Could not connect to redis server in time, events will fail until it is reachable.");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            public void onMessageReceive(String channel, final String event) {
-                if (event.trim().isEmpty()) {
-                    return;
-                }
+    /**
+     * @return the channel the event is published on: the broadcast channel of its class for the events sent to
+     * {@code *} with {@link RedisConfig#isInterestChannels()}, its target otherwise
+     */
+    private String channel(RedisEvent<?> event) {
+        String target = event.getRedisTarget();
+        if (!redisConfig().isInterestChannels() || !target.equals(broadcastChannel)) {
+            return target;
+        }
 
-                RedisEvent<?> redisEvent = RedisEvent.deserialize(event);
+        String channel = interestChannelNames.get(event.getClassName());
+        if (channel == null) {
+            channel = interestChannelNames.computeIfAbsent(event.getClassName(), className -> target + "#" + className);
+        }
+        return channel;
+    }
 
-                if (redisEvent == null) {
-                    Logger.error("An error occurred while creating the class instance of the RedisEvent. " +
-                            "Please refer to the error above if there is any.");
-                    return;
-                }
+    /**
+     * Subscribes the broadcast channels of the event classes with a handler and unsubscribes the others. Handlers of
+     * a superclass or an interface subscribe the channels of its subclasses found by the {@link Reflections}.
+     */
+    private synchronized void updateInterestChannels() {
+        if (transport == null) {
+            return;
+        }
 
-                if (redisEvent.getClass().equals(ResponseEvent.class)) {
-                    ResponseEvent responseEvent = (ResponseEvent) redisEvent;
+        Set<String> channels = new HashSet<>();
+        // Handled by the manager itself
+        channels.add(broadcastChannel + "#" + InvalidateCacheEvent.class.getName());
+        for (Class<?> handledClass : redisEventManager.handledClasses()) {
+            addInterestChannel(channels, handledClass);
+            //noinspection unchecked
+            for (Class<?> subClass : reflections().getSubTypesOf((Class<Object>) handledClass)) {
+                addInterestChannel(channels, subClass);
+            }
+        }
 
-                    debugger.receiveResponse(channel, event);
-                    RedisResponse<?> response = getResponse(responseEvent);
-                    if (response == null) {
-                        return;
-                    }
-                    response.respond(responseEvent);
+        for (String channel : interestChannels) {
+            if (!channels.contains(channel)) {
+                transport.unsubscribe(channel);
+            }
+        }
+        for (String channel : channels) {
+            if (!interestChannels.contains(channel)) {
+                transport.subscribe(channel);
+            }
+        }
+        interestChannels = channels;
+    }
 
-                    return;
-                }
+    private void addInterestChannel(Set<String> channels, Class<?> eventClass) {
+        if (!RedisEvent.class.isAssignableFrom(eventClass) || eventClass.isInterface() ||
+                Modifier.isAbstract(eventClass.getModifiers()) || eventClass == ResponseEvent.class) {
+            return;
+        }
+        channels.add(broadcastChannel + "#" + eventClass.getName());
+    }
 
-                ScheduleManager.runTaskAsync(() -> {
-                    debugger.receive(channel, event);
-                    redisEvent.fireEvent();
-                });
-            }
+    /**
+     * The responses can only arrive through the subscriber connection, so the requests awaiting one fail right away
+     * instead of each waiting for its timeout
+     */
+    private void onConnectionLost(@Nullable Throwable cause) {
+        JedisConnectionException exception = new JedisConnectionException("Lost connection to redis server", cause);
+        for (RedisResponse<?> response : awaitingResponses.values()) {
+            response.getFuture().completeExceptionally(exception);
+        }
+    }
 
-            @Override
-            public void onSubscribe(String channel, int subscribedChannels) {
-                debugger.subscribed(channel);
-            }
+    /**
+     * Fires the event to its handlers and records how long they took
+     */
+    private void fire(RedisEvent<?> event, EventMetrics eventMetrics) {
+        long start = System.nanoTime();
+        redisEventManager.fire(event);
+        long elapsed = System.nanoTime() - start;
+        eventMetrics.handled(elapsed);
+        tracer.dispatch(event.getClassName(), event.getRedisTarget(), event.getId(), elapsed);
+    }
 
-            @Override
-            public void onUnsubscribe(String channel, int subscribedChannels) {
-                debugger.unsubscribed(channel);
-            }
-        };
+    private void onTimeout(RedisEvent<?> event, long elapsed) {
+        tracer.timeout(event.getClassName(), event.getRedisTarget(), event.getId(), elapsed);
+        if (!redisConfig().isTraceDumpOnTimeout() || !tracer.isTraced(event.getClassName(), event.getRedisTarget(),
+                event.getId())) {
+            return;
+        }
 
+        String dump = tracer.dumpAtMostEvery(1, TimeUnit.SECONDS);
+        if (dump != null) {
+            Logger.warn("Request #" + event.getId() + " (" + event.getClassName() + ") timed out, trace:\n" + dump);
+        }
+    }
+
+    private void onMessage(byte[] channel, byte[] message) {
+        try {
+            onMessageReceive(channelNames.decode(channel), message);
+        } catch (Throwable throwable) {
+            if (Debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                throwable.printStackTrace();
+            }
 
-        startRedisThread();
+            Logger.error("There was an error while receiving a message from Redis.");
+        }
     }
 
-    private void startRedisThread() {
-        if (redisTread != null) {
-            redisTread.interrupt();
+    private void onMessageReceive(String channel, byte[] message) {
+        if (message.length == 0) {
+            return;
         }
 
-        redisTread = new Thread(() -> {
-            try (Jedis subscriberJedis = jedisPool.getResource()) {
-                subscriberJedis.subscribe(subscriberJedisPubSub, redisConfig().getChannel(),
-                        redisConfig().getChannelBase() + "#*");
-            } catch (Exception e) {
-                Logger.error("Lost connection to redis server. Retrying in 3 seconds...");
-                if (debugger.isEnabled()) {
-                    //noinspection CallToPrintStackTrace
-                    e.printStackTrace();
-                }
-                try {
-                    Thread.sleep(3000);
-                } catch (InterruptedException ignored) {
-                }
+        RedisEvent<?> redisEvent = codec.decode(message);
+
+        if (redisEvent == null) {
+            Logger.error("An error occurred while creating the class instance of the RedisEvent. " +
+                    "Please refer to the error above if there is any.");
+            return;
+        }
+
+        // The handlers respond through the manager that received the event
+        redisEvent.setManager(this);
+        EventMetrics eventMetrics = metrics.event(redisEvent.getClass());
+        eventMetrics.received(message.length);
+        tracer.receive(redisEvent.getClassName(), channel, redisEvent.getId(), message);
+
+        if (redisEvent.getClass().equals(ResponseEvent.class)) {
+            ResponseEvent responseEvent = (ResponseEvent) redisEvent;
 
-                Logger.good("Reconnecting to redis server.");
-                startRedisThread();
+            debugger.receiveResponse(channel, message);
+            RedisResponse<?> response = getResponse(responseEvent);
+            if (response == null) {
+                return;
             }
-        });
-        redisTread.start();
+            response.respond(responseEvent);
+
+            return;
+        }
+
+        if (redisEvent instanceof InvalidateCacheEvent) {
+            InvalidateCacheEvent invalidation = (InvalidateCacheEvent) redisEvent;
+            responseCache.invalidate(invalidation.getEventClass(), invalidation.getKey());
+        }
+
+        Runnable task = () -> {
+            debugger.receive(channel, message);
+            fire(redisEvent, eventMetrics);
+        };
+
+        Object partitionKey = redisEvent.getPartitionKey();
+        if (partitionKey == null) {
+            handlerExecutor.execute(task);
+            return;
+        }
+
+        partitionedExecutor.execute(partitionKey, task);
     }
 }
\ No newline at end of file
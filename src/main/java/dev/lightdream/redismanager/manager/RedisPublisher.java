@@ -0,0 +1,294 @@
+package dev.lightdream.redismanager.manager;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.executor.RejectionPolicy;
+import dev.lightdream.redismanager.transport.BatchPublisher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Publishes payloads asynchronously. Senders only enqueue, while a few publisher threads drain the queue in batches,
+ * so a whole batch costs a single round trip and a single connection.
+ * <p>
+ * A batch is flushed as soon as it is full or the queue is empty and the linger time passed. Payloads are published in
+ * the order they were enqueued when there is a single publisher thread, more threads trade that order for throughput.
+ */
+public class RedisPublisher {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final AtomicInteger publisherCounter = new AtomicInteger();
+
+    private final BatchPublisher transport;
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    // Entries in the queue, used to bound it
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final RejectionPolicy policy;
+    private final Worker[] workers;
+    private volatile boolean running = true;
+
+    /**
+     * @param transport publishes a batch, see {@link dev.lightdream.redismanager.transport.RedisTransport}
+     * @param threads   the number of publisher threads
+     * @param queueSize the maximum number of payloads waiting to be published
+     * @param batchSize the maximum number of payloads published at once
+     * @param linger    the time in microseconds a publisher waits for a batch to fill up before flushing it
+     * @param policy    what happens to a payload published while the queue is full
+     */
+    public RedisPublisher(BatchPublisher transport, int threads, int queueSize, int batchSize, int linger,
+                          RejectionPolicy policy) {
+        this.transport = transport;
+        this.capacity = queueSize;
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(linger);
+        this.policy = policy;
+
+        int id = publisherCounter.incrementAndGet();
+        this.workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker("RedisManager-Publisher-" + id + "-" + (i + 1));
+            workers[i].thread.start();
+        }
+    }
+
+    /**
+     * @return a future completed with the number of subscribers that received the payload once Redis acknowledged
+     * the publish, or completed exceptionally if it could not be published
+     */
+    public CompletableFuture<Long> publish(byte[] channel, byte[] payload) {
+        Entry entry = new Entry(channel, payload);
+
+        if (!running) {
+            entry.future.completeExceptionally(new RejectedExecutionException("Publisher has been shut down"));
+            return entry.future;
+        }
+
+        if (!reserve()) {
+            switch (policy) {
+                case CALLER_RUNS:
+                    publishNow(entry);
+                    return entry.future;
+                case DISCARD:
+                    entry.future.complete(0L);
+                    return entry.future;
+                case DISCARD_OLDEST:
+                    Entry oldest = queue.poll();
+                    if (oldest != null) {
+                        oldest.future.complete(0L);
+                        // The slot of the oldest entry is taken over
+                        break;
+                    }
+                    if (!reserve()) {
+                        entry.future.complete(0L);
+                        return entry.future;
+                    }
+                    break;
+                case BLOCK:
+                    while (!reserve()) {
+                        if (!running || Thread.currentThread().isInterrupted()) {
+                            entry.future.completeExceptionally(
+                                    new RejectedExecutionException("Stopped waiting for space in the queue"));
+                            return entry.future;
+                        }
+                        LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+                    }
+                    break;
+                case ABORT:
+                default:
+                    entry.future.completeExceptionally(new RejectedExecutionException("Publish queue is full"));
+                    return entry.future;
+            }
+        }
+
+        queue.offer(entry);
+        // Shut down since the check above, the workers may have left once the queue was empty
+        if (!running && queue.remove(entry)) {
+            size.decrementAndGet();
+            entry.future.completeExceptionally(new RejectedExecutionException("Publisher has been shut down"));
+            return entry.future;
+        }
+        signal();
+
+        return entry.future;
+    }
+
+    private boolean reserve() {
+        while (true) {
+            int current = size.get();
+            if (current >= capacity) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void signal() {
+        for (Worker worker : workers) {
+            if (worker.sleeping) {
+                worker.sleeping = false;
+                LockSupport.unpark(worker.thread);
+                return;
+            }
+        }
+    }
+
+    private void publishNow(Entry entry) {
+        try {
+            long[] receivers = transport.publish(new byte[][]{entry.channel}, new byte[][]{entry.payload}, 1);
+            entry.future.complete(receivers[0]);
+        } catch (Exception e) {
+            entry.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return the number of payloads waiting to be published
+     */
+    public int queueSize() {
+        return size.get();
+    }
+
+    /**
+     * Stops the publisher threads once the payloads already queued are published
+     */
+    public void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    /**
+     * Waits for the publisher threads to stop after {@link #shutdown()}
+     *
+     * @return true if they stopped in time
+     */
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (Worker worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            // 0 would wait forever
+            worker.thread.join(Math.max(1, remaining));
+            if (worker.thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Entry {
+
+        private final byte[] channel;
+        private final byte[] payload;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Entry(byte[] channel, byte[] payload) {
+            this.channel = channel;
+            this.payload = payload;
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private final Thread thread;
+        private final List<Entry> batch = new ArrayList<>();
+        private final byte[][] channels = new byte[batchSize][];
+        private final byte[][] payloads = new byte[batchSize][];
+        private volatile boolean sleeping;
+
+        private Worker(String name) {
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running || !queue.isEmpty()) {
+                Entry entry = queue.poll();
+                if (entry == null) {
+                    idle();
+                    continue;
+                }
+
+                batch.add(entry);
+                fill();
+                size.addAndGet(-batch.size());
+
+                flush();
+                batch.clear();
+            }
+        }
+
+        private void idle() {
+            sleeping = true;
+            // Checked after announcing the sleep, so a sender either sees this worker sleeping or this worker sees
+            // the entry of the sender
+            if (running && queue.isEmpty()) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+
+        private void fill() {
+            long deadline = lingerNanos > 0 ? System.nanoTime() + lingerNanos : 0;
+
+            while (batch.size() < batchSize) {
+                Entry entry = queue.poll();
+                if (entry != null) {
+                    batch.add(entry);
+                    continue;
+                }
+
+                if (lingerNanos <= 0 || System.nanoTime() - deadline >= 0) {
+                    return;
+                }
+                LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+            }
+        }
+
+        private void flush() {
+            for (int i = 0; i < batch.size(); i++) {
+                channels[i] = batch.get(i).channel;
+                payloads[i] = batch.get(i).payload;
+            }
+
+            long[] receivers;
+            try {
+                receivers = transport.publish(channels, payloads, batch.size());
+            } catch (Exception e) {
+                Logger.error("Unable to publish " + batch.size() + " message(s) to Redis");
+                if (Debugger.isEnabled()) {
+                    //noinspection CallToPrintStackTrace
+                    e.printStackTrace();
+                }
+
+                for (Entry entry : batch) {
+                    entry.future.completeExceptionally(e);
+                }
+                return;
+            } finally {
+                // Not kept alive until the next batch
+                Arrays.fill(channels, 0, batch.size(), null);
+                Arrays.fill(payloads, 0, batch.size(), null);
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future.complete(receivers[i]);
+            }
+        }
+    }
+}
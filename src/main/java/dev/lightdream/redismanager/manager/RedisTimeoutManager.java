@@ -0,0 +1,274 @@
+package dev.lightdream.redismanager.manager;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timing wheel that tracks the deadlines of all the pending requests on a single thread.
+ * Scheduling and cancelling a timeout are both O(1), the wheel thread only touches the bucket of the current tick.
+ */
+public class RedisTimeoutManager {
+
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickDuration;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final long startTime;
+    private final Thread workerThread;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param tickDuration the resolution of the wheel in milliseconds
+     * @param wheelSize    the amount of buckets, rounded up to a power of two
+     */
+    public RedisTimeoutManager(long tickDuration, int wheelSize) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0");
+        }
+        if (wheelSize <= 0) {
+            throw new IllegalArgumentException("wheelSize must be greater than 0");
+        }
+
+        this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+
+        this.startTime = System.nanoTime();
+        this.workerThread = new Thread(this::run, "RedisManager-Timeouts");
+        this.workerThread.setDaemon(true);
+        this.workerThread.start();
+    }
+
+    /**
+     * Schedules a task to be executed on the timer thread once the delay has passed
+     *
+     * @param task  the task to execute. Should be short and non-blocking.
+     * @param delay the delay in milliseconds
+     * @return the handle that can be used to cancel the task
+     */
+    public Timeout schedule(Runnable task, long delay) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(delay, 0)) - startTime;
+        Timeout timeout = new Timeout(task, deadline);
+        pending.incrementAndGet();
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts that have neither expired nor been cancelled
+     */
+    public int pending() {
+        return pending.get();
+    }
+
+    public void shutdown() {
+        running = false;
+        workerThread.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = waitForNextTick();
+            if (deadline < 0) {
+                continue;
+            }
+
+            processCancelledTimeouts();
+            transferTimeoutsToBuckets();
+            wheel[(int) (tick & mask)].expireTimeouts(deadline);
+            tick++;
+        }
+    }
+
+    /**
+     * @return the current time relative to the start time or -1 if the thread was interrupted
+     */
+    private long waitForNextTick() {
+        long deadline = tickDuration * (tick + 1);
+
+        while (true) {
+            long currentTime = System.nanoTime() - startTime;
+            long sleepTime = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999_999);
+
+            if (sleepTime <= 0) {
+                return currentTime;
+            }
+
+            try {
+                //noinspection BusyWait
+                Thread.sleep(sleepTime);
+            } catch (InterruptedException e) {
+                if (!running) {
+                    return -1;
+                }
+            }
+        }
+    }
+
+    private void processCancelledTimeouts() {
+        Timeout timeout;
+        while ((timeout = cancelledTimeouts.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferTimeoutsToBuckets() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.STATE_PENDING) {
+                continue;
+            }
+
+            long calculated = timeout.deadline / tickDuration;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+            // Deadlines that are already in the past are put in the current bucket so they expire on this tick
+            long ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    public class Timeout {
+
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(STATE_PENDING);
+        private long remainingRounds;
+
+        // Only accessed by the wheel thread
+        private Bucket bucket;
+        private Timeout next;
+        private Timeout previous;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the timeout was cancelled by this call, false if it already expired or was cancelled
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == STATE_CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == STATE_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+
+            try {
+                task.run();
+            } catch (Throwable throwable) {
+                Logger.error("There was an error while executing a RedisManager timeout.");
+                if (Debugger.isEnabled()) {
+                    //noinspection CallToPrintStackTrace
+                    throwable.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Doubly linked list of timeouts. Only accessed by the wheel thread.
+     */
+    private static class Bucket {
+
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.previous = tail;
+                tail = timeout;
+            }
+        }
+
+        private void expireTimeouts(long deadline) {
+            Timeout timeout = head;
+
+            while (timeout != null) {
+                Timeout next = timeout.next;
+
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+
+                timeout = next;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.bucket != this) {
+                return;
+            }
+
+            if (timeout.previous != null) {
+                timeout.previous.next = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.previous = timeout.previous;
+            }
+            if (timeout == head) {
+                head = timeout.next;
+            }
+            if (timeout == tail) {
+                tail = timeout.previous;
+            }
+
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package dev.lightdream.redismanager.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measurements of a single event class
+ */
+public class EventMetrics implements EventMetricsMXBean {
+
+    private final String eventClass;
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    private final LatencyHistogram handlerTime = new LatencyHistogram();
+    private final LatencyHistogram roundTrip = new LatencyHistogram();
+
+    EventMetrics(String eventClass) {
+        this.eventClass = eventClass;
+    }
+
+    public String eventClass() {
+        return eventClass;
+    }
+
+    /**
+     * @param bytes the size of the encoded event, 0 if it was not encoded
+     */
+    public void sent(int bytes) {
+        sent.increment();
+        sentBytes.add(bytes);
+    }
+
+    public void received(int bytes) {
+        received.increment();
+        receivedBytes.add(bytes);
+    }
+
+    /**
+     * @param nanos the time all the handlers of the event took
+     */
+    public void handled(long nanos) {
+        handlerTime.record(nanos);
+    }
+
+    /**
+     * @param nanos the time between sending the request and receiving its response
+     */
+    public void responded(long nanos) {
+        roundTrip.record(nanos);
+    }
+
+    public void timedOut() {
+        timeouts.increment();
+    }
+
+    /**
+     * A request that could not be sent or whose response could not arrive
+     */
+    public void failed() {
+        failures.increment();
+    }
+
+    /**
+     * A request that was not sent as it joined the identical request in flight, see
+     * {@link dev.lightdream.redismanager.annotation.Coalesce}
+     */
+    public void coalesced() {
+        coalesced.increment();
+    }
+
+    /**
+     * A request answered from the cache, see {@link dev.lightdream.redismanager.annotation.CacheResponse}
+     */
+    public void cacheHit() {
+        cacheHits.increment();
+    }
+
+    public void cacheMiss() {
+        cacheMisses.increment();
+    }
+
+    /**
+     * @return the time all the handlers of a received event took, in nanoseconds
+     */
+    public LatencyHistogram handlerTime() {
+        return handlerTime;
+    }
+
+    /**
+     * @return the time between sending a request and receiving its response, in nanoseconds
+     */
+    public LatencyHistogram roundTrip() {
+        return roundTrip;
+    }
+
+    @Override
+    public long getSent() {
+        return sent.sum();
+    }
+
+    @Override
+    public long getReceived() {
+        return received.sum();
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.sum();
+    }
+
+    @Override
+    public long getReceivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    @Override
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getHandled() {
+        return handlerTime.count();
+    }
+
+    @Override
+    public double getHandlerTimeMean() {
+        return handlerTime.snapshot().mean();
+    }
+
+    @Override
+    public long getHandlerTime99() {
+        return handlerTime.snapshot().percentile(99);
+    }
+
+    @Override
+    public long getHandlerTimeMax() {
+        return handlerTime.snapshot().max();
+    }
+
+    @Override
+    public long getRoundTrips() {
+        return roundTrip.count();
+    }
+
+    @Override
+    public double getRoundTripMean() {
+        return roundTrip.snapshot().mean();
+    }
+
+    @Override
+    public long getRoundTrip50() {
+        return roundTrip.snapshot().percentile(50);
+    }
+
+    @Override
+    public long getRoundTrip99() {
+        return roundTrip.snapshot().percentile(99);
+    }
+
+    @Override
+    public long getRoundTripMax() {
+        return roundTrip.snapshot().max();
+    }
+}
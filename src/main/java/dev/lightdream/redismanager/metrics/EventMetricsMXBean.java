@@ -0,0 +1,45 @@
+package dev.lightdream.redismanager.metrics;
+
+/**
+ * JMX view of the {@link EventMetrics} of an event class, the durations are in nanoseconds
+ */
+@SuppressWarnings("unused")
+public interface EventMetricsMXBean {
+
+    long getSent();
+
+    long getReceived();
+
+    long getSentBytes();
+
+    long getReceivedBytes();
+
+    long getTimeouts();
+
+    long getFailures();
+
+    long getCoalesced();
+
+    long getCacheHits();
+
+    long getCacheMisses();
+
+    long getHandled();
+
+    double getHandlerTimeMean();
+
+    long getHandlerTime99();
+
+    long getHandlerTimeMax();
+
+    long getRoundTrips();
+
+    double getRoundTripMean();
+
+    long getRoundTrip50();
+
+    long getRoundTrip99();
+
+    long getRoundTripMax();
+
+}
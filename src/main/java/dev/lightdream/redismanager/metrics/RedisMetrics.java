@@ -0,0 +1,152 @@
+package dev.lightdream.redismanager.metrics;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of a {@link dev.lightdream.redismanager.manager.RedisManager}: an {@link EventMetrics} per event class and a
+ * few gauges read when pulled. Recording only touches {@link java.util.concurrent.atomic.LongAdder}s and
+ * {@link LatencyHistogram}s, the {@link EventMetrics} of a class is only allocated the first time the class is seen.
+ * <p>
+ * With JMX enabled the gauges and every {@link EventMetrics} are registered on the platform MBean server under the
+ * {@value #DOMAIN} domain.
+ */
+public class RedisMetrics implements RedisMetricsMXBean {
+
+    public static final String DOMAIN = "dev.lightdream.redismanager";
+
+    private final String node;
+    private final boolean jmx;
+    private final IntSupplier pendingResponses;
+    private final IntSupplier executorQueueDepth;
+    private final IntSupplier publishQueueSize;
+    private final LongSupplier outboxPending;
+    private final Map<Class<?>, EventMetrics> events = new ConcurrentHashMap<>();
+    private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param node the id of the node, used to tell the MBeans of several nodes in the same JVM apart
+     * @param jmx  whether to register the metrics as MBeans
+     */
+    public RedisMetrics(String node, boolean jmx, IntSupplier pendingResponses, IntSupplier executorQueueDepth,
+                        IntSupplier publishQueueSize, LongSupplier outboxPending) {
+        this.node = node;
+        this.jmx = jmx;
+        this.pendingResponses = pendingResponses;
+        this.executorQueueDepth = executorQueueDepth;
+        this.publishQueueSize = publishQueueSize;
+        this.outboxPending = outboxPending;
+
+        if (jmx) {
+            register(this, "type=RedisManager,node=" + ObjectName.quote(node));
+        }
+    }
+
+    /**
+     * @return the metrics of the event class, created the first time
+     */
+    public EventMetrics event(Class<?> eventClass) {
+        EventMetrics metrics = events.get(eventClass);
+        if (metrics == null) {
+            metrics = events.computeIfAbsent(eventClass, this::create);
+        }
+        return metrics;
+    }
+
+    public Collection<EventMetrics> events() {
+        return Collections.unmodifiableCollection(events.values());
+    }
+
+    private EventMetrics create(Class<?> eventClass) {
+        EventMetrics metrics = new EventMetrics(eventClass.getName());
+        if (jmx) {
+            register(metrics, "type=Event,node=" + ObjectName.quote(node) + ",name=" +
+                    ObjectName.quote(eventClass.getName()));
+        }
+        return metrics;
+    }
+
+    private void register(Object bean, String properties) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            registered.add(name);
+        } catch (JMException e) {
+            Logger.error("Unable to register the " + properties + " MBean");
+            if (Debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Removes the MBeans registered by these metrics
+     */
+    public void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                if (Debugger.isEnabled()) {
+                    //noinspection CallToPrintStackTrace
+                    e.printStackTrace();
+                }
+            }
+        }
+        registered.clear();
+    }
+
+    /**
+     * @return the number of requests waiting for their response
+     */
+    @Override
+    public int getPendingResponses() {
+        return pendingResponses.getAsInt();
+    }
+
+    /**
+     * @return the number of received events waiting for a handler thread
+     */
+    @Override
+    public int getExecutorQueueDepth() {
+        return executorQueueDepth.getAsInt();
+    }
+
+    /**
+     * @return the number of events waiting to be published, see
+     * {@link dev.lightdream.redismanager.dto.RedisConfig#isAsyncPublish()}
+     */
+    @Override
+    public int getPublishQueueSize() {
+        return publishQueueSize.getAsInt();
+    }
+
+    /**
+     * @return the number of events waiting in the outbox, see
+     * {@link dev.lightdream.redismanager.dto.RedisConfig#isOutbox()}
+     */
+    @Override
+    public long getOutboxPending() {
+        return outboxPending.getAsLong();
+    }
+}
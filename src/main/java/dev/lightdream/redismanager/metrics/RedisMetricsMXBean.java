@@ -0,0 +1,17 @@
+package dev.lightdream.redismanager.metrics;
+
+/**
+ * JMX view of the gauges of a {@link RedisMetrics}
+ */
+@SuppressWarnings("unused")
+public interface RedisMetricsMXBean {
+
+    int getPendingResponses();
+
+    int getExecutorQueueDepth();
+
+    int getPublishQueueSize();
+
+    long getOutboxPending();
+
+}
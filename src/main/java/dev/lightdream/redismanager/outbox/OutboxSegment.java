@@ -0,0 +1,180 @@
+package dev.lightdream.redismanager.outbox;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+/**
+ * A fixed size, memory-mapped file of the outbox journal. Records are appended one after the other:
+ * <pre>
+ * int length | byte state | int crc | long expiresAt | int channelLength | channel | payload
+ * </pre>
+ * The crc covers everything after it. Files are zero filled when created, so a length of 0 marks the end of the
+ * records. A record that fails the crc was torn by a crash and ends the segment as well.
+ */
+class OutboxSegment {
+
+    static final int HEADER_SIZE = 4 + 1 + 4 + 8 + 4;
+
+    static final byte PENDING = 1;
+    static final byte SENT = 2;
+
+    private static final int STATE_OFFSET = 4;
+
+    final long id;
+    final Path path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private int writePosition;
+    private boolean dirty;
+
+    private OutboxSegment(long id, Path path, int size) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    static OutboxSegment create(long id, Path path, int size) throws IOException {
+        Files.deleteIfExists(path);
+        return new OutboxSegment(id, path, size);
+    }
+
+    /**
+     * Opens an existing segment and finds the end of its records
+     */
+    static OutboxSegment open(long id, Path path, int size) throws IOException {
+        OutboxSegment segment = new OutboxSegment(id, path, Math.max(size, (int) Files.size(path)));
+        int position = 0;
+        while (segment.isValid(position)) {
+            position += segment.buffer.getInt(position);
+        }
+        segment.writePosition = position;
+        return segment;
+    }
+
+    static int recordSize(byte[] channel, byte[] payload) {
+        return HEADER_SIZE + channel.length + payload.length;
+    }
+
+    boolean hasSpace(int recordSize) {
+        // Keeps room for the 0 length that ends the records
+        return writePosition + recordSize + 4 <= buffer.capacity();
+    }
+
+    /**
+     * @return the position of the record
+     */
+    int append(byte[] channel, byte[] payload, long expiresAt) {
+        int position = writePosition;
+        int length = recordSize(channel, payload);
+
+        CRC32 crc = new CRC32();
+        buffer.putLong(position + HEADER_SIZE - 12, expiresAt);
+        buffer.putInt(position + HEADER_SIZE - 4, channel.length);
+        putBytes(position + HEADER_SIZE, channel);
+        putBytes(position + HEADER_SIZE + channel.length, payload);
+        update(crc, position + HEADER_SIZE - 12, length - HEADER_SIZE + 12);
+
+        buffer.putInt(position + STATE_OFFSET + 1, (int) crc.getValue());
+        buffer.put(position + STATE_OFFSET, PENDING);
+        // Written last, a crash before this point leaves the record out
+        buffer.putInt(position, length);
+
+        writePosition += length;
+        dirty = true;
+        return position;
+    }
+
+    boolean isValid(int position) {
+        if (position + HEADER_SIZE > buffer.capacity()) {
+            return false;
+        }
+
+        int length = buffer.getInt(position);
+        if (length < HEADER_SIZE || position + length > buffer.capacity()) {
+            return false;
+        }
+
+        CRC32 crc = new CRC32();
+        update(crc, position + HEADER_SIZE - 12, length - HEADER_SIZE + 12);
+        return buffer.getInt(position + STATE_OFFSET + 1) == (int) crc.getValue();
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    int length(int position) {
+        return buffer.getInt(position);
+    }
+
+    byte state(int position) {
+        return buffer.get(position + STATE_OFFSET);
+    }
+
+    long expiresAt(int position) {
+        return buffer.getLong(position + HEADER_SIZE - 12);
+    }
+
+    byte[] channel(int position) {
+        return getBytes(position + HEADER_SIZE, buffer.getInt(position + HEADER_SIZE - 4));
+    }
+
+    byte[] payload(int position) {
+        int channelLength = buffer.getInt(position + HEADER_SIZE - 4);
+        return getBytes(position + HEADER_SIZE + channelLength, length(position) - HEADER_SIZE - channelLength);
+    }
+
+    void markSent(int position) {
+        buffer.put(position + STATE_OFFSET, SENT);
+        dirty = true;
+    }
+
+    /**
+     * @return true if the segment changed since the last call
+     */
+    boolean takeDirty() {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    /**
+     * Writes the segment to the disk
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private void putBytes(int position, byte[] bytes) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(bytes);
+    }
+
+    private byte[] getBytes(int position, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private void update(CRC32 crc, int position, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.limit(position + length);
+        view.position(position);
+        crc.update(view);
+    }
+}
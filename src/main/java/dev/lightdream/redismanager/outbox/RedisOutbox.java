@@ -0,0 +1,401 @@
+package dev.lightdream.redismanager.outbox;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.transport.BatchPublisher;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Durable queue for the payloads that could not be published while Redis was unreachable. Payloads are appended to
+ * memory-mapped segment files (see {@link OutboxSegment}), so appending is a memory copy. The segments are forced to
+ * the disk every flush interval by the outbox thread, committing all the payloads appended in the meantime at once.
+ * <p>
+ * Once Redis is reachable the outbox thread publishes the payloads in the order they were appended, skipping the ones
+ * whose time to live ran out, and deletes the segments that were fully published. Payloads that were not published
+ * before a restart are published after it.
+ */
+public class RedisOutbox {
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int REPLAY_BATCH_SIZE = 256;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long flushIntervalNanos;
+    private final BatchPublisher transport;
+    private final BooleanSupplier connected;
+    private final Thread thread;
+
+    // Guarded by this
+    private final Deque<OutboxSegment> segments = new ArrayDeque<>();
+    // Futures of the payloads appended by this process, in the order they were appended
+    private final Deque<Pending> futures = new ArrayDeque<>();
+    private int readPosition;
+
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param segmentSize   the size of a segment file in bytes
+     * @param maxSegments   the maximum number of segment files, payloads are rejected once they are full
+     * @param flushInterval the time in milliseconds between two flushes to the disk
+     * @param transport     publishes the payloads once Redis is reachable
+     * @param connected     whether Redis is reachable right now
+     */
+    public RedisOutbox(Path directory, int segmentSize, int maxSegments, int flushInterval, BatchPublisher transport,
+                       BooleanSupplier connected) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.transport = transport;
+        this.connected = connected;
+
+        Files.createDirectories(directory);
+        recover();
+
+        this.thread = new Thread(this::run, "RedisManager-Outbox");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream
+                    .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted(Comparator.comparingLong(RedisOutbox::segmentId))
+                    .collect(Collectors.toList());
+        }
+
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            OutboxSegment segment = OutboxSegment.open(segmentId(file), file, segmentSize);
+
+            long segmentPending = 0;
+            for (int position = 0; position < segment.writePosition(); position += segment.length(position)) {
+                if (segment.state(position) == OutboxSegment.PENDING) {
+                    segmentPending++;
+                }
+            }
+
+            // Fully published, the last segment is kept to append to it
+            if (segmentPending == 0 && i != files.size() - 1) {
+                delete(segment);
+                continue;
+            }
+
+            segments.add(segment);
+            pending.addAndGet(segmentPending);
+        }
+
+        if (pending.get() != 0) {
+            Logger.info("Recovered " + pending.get() + " unsent event(s) from the outbox.");
+        }
+    }
+
+    /**
+     * @param ttl the time in milliseconds after which the payload is dropped if it was not published yet
+     * @return a future completed with the number of subscribers that received the payload once it is published, or
+     * null if the outbox is full
+     */
+    public synchronized @Nullable CompletableFuture<Long> append(byte[] channel, byte[] payload, long ttl) {
+        int recordSize = OutboxSegment.recordSize(channel, payload);
+
+        OutboxSegment segment = segments.peekLast();
+        if (segment == null || !segment.hasSpace(recordSize)) {
+            segment = roll(recordSize);
+            if (segment == null) {
+                dropped.incrementAndGet();
+                return null;
+            }
+        }
+
+        int position = segment.append(channel, payload, System.currentTimeMillis() + ttl);
+        pending.incrementAndGet();
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        futures.add(new Pending(segment.id, position, future));
+        return future;
+    }
+
+    private @Nullable OutboxSegment roll(int recordSize) {
+        if (recordSize + 4 > segmentSize || segments.size() >= maxSegments) {
+            return null;
+        }
+
+        OutboxSegment last = segments.peekLast();
+        long id = last == null ? 1 : last.id + 1;
+        try {
+            OutboxSegment segment = OutboxSegment.create(id, directory.resolve(SEGMENT_PREFIX + id + SEGMENT_SUFFIX),
+                    segmentSize);
+            segments.add(segment);
+            return segment;
+        } catch (IOException e) {
+            Logger.error("Unable to create outbox segment " + id);
+            //noinspection CallToPrintStackTrace
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * @return true if no payload is waiting to be published
+     */
+    public boolean isEmpty() {
+        return pending.get() == 0;
+    }
+
+    public long pending() {
+        return pending.get();
+    }
+
+    /**
+     * @return the number of payloads rejected because the outbox was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of payloads dropped because their time to live ran out before they could be published
+     */
+    public long expired() {
+        return expired.get();
+    }
+
+    /**
+     * Wakes up the outbox thread to publish the pending payloads right away instead of on the next flush, called once
+     * the transport is connected again
+     */
+    public void replay() {
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Stops the outbox thread, which closes the segments. The pending payloads are published after a restart.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * Waits for the outbox thread to close the segments after {@link #shutdown()}
+     *
+     * @return true if it stopped in time
+     */
+    public boolean awaitTermination(long timeout) throws InterruptedException {
+        // 0 would wait forever
+        thread.join(Math.max(1, timeout));
+        return !thread.isAlive();
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+
+            flush();
+            if (!isEmpty() && connected.getAsBoolean()) {
+                publishPending();
+            }
+        }
+
+        synchronized (this) {
+            for (OutboxSegment segment : segments) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    //noinspection CallToPrintStackTrace
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forces the changed segments to the disk without holding the lock, so appending does not wait for the disk
+     */
+    private void flush() {
+        List<OutboxSegment> changed = new ArrayList<>();
+        synchronized (this) {
+            for (OutboxSegment segment : segments) {
+                if (segment.takeDirty()) {
+                    changed.add(segment);
+                }
+            }
+        }
+
+        for (OutboxSegment segment : changed) {
+            segment.force();
+        }
+    }
+
+    private void publishPending() {
+        List<Record> batch = new ArrayList<>(REPLAY_BATCH_SIZE);
+        byte[][] channels = new byte[REPLAY_BATCH_SIZE][];
+        byte[][] payloads = new byte[REPLAY_BATCH_SIZE][];
+
+        while (running) {
+            readBatch(batch);
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            // Expired records are only marked as sent
+            int count = 0;
+            for (Record record : batch) {
+                if (record.payload != null) {
+                    channels[count] = record.channel;
+                    payloads[count] = record.payload;
+                    count++;
+                }
+            }
+
+            long[] receivers;
+            try {
+                receivers = count == 0 ? new long[0] : transport.publish(channels, payloads, count);
+            } catch (Exception e) {
+                // Retried on the next flush, the batch is read again from the segments
+                if (Debugger.isEnabled()) {
+                    //noinspection CallToPrintStackTrace
+                    e.printStackTrace();
+                }
+                return;
+            }
+
+            markSent(batch, receivers);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Reads the next pending payloads without consuming them
+     */
+    private synchronized void readBatch(List<Record> batch) {
+        long now = System.currentTimeMillis();
+        int position = readPosition;
+
+        for (OutboxSegment segment : segments) {
+            for (; position < segment.writePosition() && batch.size() < REPLAY_BATCH_SIZE;
+                 position += segment.length(position)) {
+                if (segment.state(position) != OutboxSegment.PENDING) {
+                    continue;
+                }
+
+                boolean isExpired = segment.expiresAt(position) < now;
+                batch.add(new Record(segment, position, segment.channel(position),
+                        isExpired ? null : segment.payload(position)));
+            }
+
+            if (batch.size() >= REPLAY_BATCH_SIZE) {
+                return;
+            }
+            position = 0;
+        }
+    }
+
+    private synchronized void markSent(List<Record> batch, long[] receivers) {
+        int published = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            Record record = batch.get(i);
+            record.segment.markSent(record.position);
+            pending.decrementAndGet();
+
+            Pending head = futures.peekFirst();
+            boolean ownRecord = head != null && head.segmentId == record.segment.id && head.position == record.position;
+            if (ownRecord) {
+                futures.pollFirst();
+            }
+
+            if (record.payload == null) {
+                expired.incrementAndGet();
+                if (ownRecord) {
+                    head.future.completeExceptionally(new TimeoutException("Expired in the outbox"));
+                }
+                continue;
+            }
+            if (ownRecord) {
+                head.future.complete(receivers[published]);
+            }
+            published++;
+        }
+
+        Record last = batch.get(batch.size() - 1);
+        readPosition = last.position + last.segment.length(last.position);
+
+        // Segments before the one of the last record are fully published
+        while (segments.peekFirst() != last.segment) {
+            delete(segments.pollFirst());
+        }
+        if (readPosition >= last.segment.writePosition() && last.segment != segments.peekLast()) {
+            delete(segments.pollFirst());
+            readPosition = 0;
+        }
+    }
+
+    private void delete(OutboxSegment segment) {
+        try {
+            segment.close();
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            Logger.error("Unable to delete outbox segment " + segment.path);
+        }
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Record {
+
+        private final OutboxSegment segment;
+        private final int position;
+        private final byte[] channel;
+        // Null if the record expired
+        private final @Nullable byte[] payload;
+
+        private Record(OutboxSegment segment, int position, byte[] channel, @Nullable byte[] payload) {
+            this.segment = segment;
+            this.position = position;
+            this.channel = channel;
+            this.payload = payload;
+        }
+    }
+
+    private static class Pending {
+
+        private final long segmentId;
+        private final int position;
+        private final CompletableFuture<Long> future;
+
+        private Pending(long segmentId, int position, CompletableFuture<Long> future) {
+            this.segmentId = segmentId;
+            this.position = position;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package dev.lightdream.redismanager.trace;
+
+import dev.lightdream.redismanager.dto.RedisConfig;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * Records what happened to the sampled events in a fixed size ring buffer, to be looked at once something went wrong,
+ * instead of logging every event like the {@link dev.lightdream.redismanager.manager.RedisDebugger}.
+ * <p>
+ * The entries are allocated once and overwritten in turns, a record only claims the next sequence and writes its fields.
+ * Each entry is guarded by its sequence in an {@link AtomicLongArray}. A writer claims the entry with a CAS to
+ * {@code WRITING}, so a writer that lapped the buffer while another one still writes the same entry drops its record
+ * instead of mixing their fields, and publishes it by setting the sequence of the record. Readers validate their copy
+ * with a CAS of the sequence onto itself, as the copy could be reordered after a plain re-read, and skip the entries
+ * overwritten while they copied them. Payloads are only kept with {@link RedisConfig#isTracePayloads()},
+ * as a reference to the published array that is decoded when dumped.
+ * <p>
+ * Requests are sampled by id, so a traced request is traced with its response on every node it goes through.
+ */
+public class RedisTracer {
+
+    private static final long WRITING = -1;
+    private static final long EMPTY = -2;
+
+    private final boolean enabled;
+    private final Entry[] entries;
+    // The sequence of the record in each entry, WRITING while it is written, EMPTY before the first record
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final int sampleRate;
+    private final Set<String> eventClasses;
+    private final Set<String> channels;
+    private final boolean payloads;
+    private final Function<byte[], String> payloadDecoder;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong lastDump = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param payloadDecoder turns a recorded payload into text when dumped
+     */
+    public RedisTracer(RedisConfig config, Function<byte[], String> payloadDecoder) {
+        this.enabled = config.isTrace();
+        this.sampleRate = Math.max(1, config.getTraceSampleRate());
+        this.eventClasses = new HashSet<>(config.getTraceEvents());
+        this.channels = new HashSet<>(config.getTraceChannels());
+        this.payloads = config.isTracePayloads();
+        this.payloadDecoder = payloadDecoder;
+
+        int size = enabled ? Integer.highestOneBit(Math.max(1, config.getTraceBufferSize() - 1)) << 1 : 1;
+        this.entries = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, EMPTY);
+        }
+        this.mask = size - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the event passes the filters and the sampling
+     */
+    public boolean isTraced(String eventClass, String channel, long id) {
+        if (!enabled) {
+            return false;
+        }
+        if (!eventClasses.isEmpty() && !eventClasses.contains(eventClass)) {
+            return false;
+        }
+        if (!channels.isEmpty() && !channels.contains(channel)) {
+            return false;
+        }
+        if (sampleRate == 1) {
+            return true;
+        }
+
+        // Mixed, so sequential ids do not sample a fixed stride
+        long hash = id * 0x9E3779B97F4A7C15L;
+        return Long.remainderUnsigned(hash ^ (hash >>> 32), sampleRate) == 0;
+    }
+
+    public void send(String eventClass, String channel, long id, byte[] payload) {
+        record(TraceRecord.Type.SEND, eventClass, channel, id, payload.length, -1, payload);
+    }
+
+    public void receive(String eventClass, String channel, long id, byte[] payload) {
+        record(TraceRecord.Type.RECEIVE, eventClass, channel, id, payload.length, -1, payload);
+    }
+
+    public void dispatch(String eventClass, String channel, long id, long nanos) {
+        record(TraceRecord.Type.DISPATCH, eventClass, channel, id, -1, nanos, null);
+    }
+
+    public void response(String eventClass, String channel, long id, long nanos) {
+        record(TraceRecord.Type.RESPONSE, eventClass, channel, id, -1, nanos, null);
+    }
+
+    public void timeout(String eventClass, String channel, long id, long nanos) {
+        record(TraceRecord.Type.TIMEOUT, eventClass, channel, id, -1, nanos, null);
+    }
+
+    /**
+     * @param size     the size of the payload in bytes, -1 if none
+     * @param duration the duration in nanoseconds, -1 if none
+     */
+    private void record(TraceRecord.Type type, String eventClass, String channel, long id, int size, long duration,
+                        @Nullable byte[] payload) {
+        if (!isTraced(eventClass, channel, id)) {
+            return;
+        }
+
+        long recordSequence = sequence.getAndIncrement();
+        int index = (int) (recordSequence & mask);
+        if (!claim(index, recordSequence)) {
+            return;
+        }
+
+        Entry entry = entries[index];
+        entry.time = System.currentTimeMillis();
+        entry.nanoTime = System.nanoTime();
+        entry.type = type;
+        entry.eventClass = eventClass;
+        entry.channel = channel;
+        entry.id = id;
+        entry.size = size;
+        entry.duration = duration;
+        entry.payload = payloads ? payload : null;
+        // Ordered after the fields
+        sequences.lazySet(index, recordSequence);
+    }
+
+    /**
+     * @return false if the entry is written by another writer or already holds a newer record
+     */
+    private boolean claim(int index, long recordSequence) {
+        while (true) {
+            long current = sequences.get(index);
+            if (current == WRITING || current > recordSequence) {
+                return false;
+            }
+            if (sequences.compareAndSet(index, current, WRITING)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of records since the start, including the overwritten ones
+     */
+    public long recorded() {
+        return sequence.get();
+    }
+
+    /**
+     * @return the records in the buffer, oldest first
+     */
+    public List<TraceRecord> snapshot() {
+        if (!enabled) {
+            return Collections.emptyList();
+        }
+
+        List<TraceRecord> records = new ArrayList<>(entries.length);
+        for (int index = 0; index < entries.length; index++) {
+            long before = sequences.get(index);
+            if (before < 0) {
+                continue;
+            }
+
+            Entry entry = entries[index];
+            TraceRecord.Type type = entry.type;
+            String eventClass = entry.eventClass;
+            String channel = entry.channel;
+            long time = entry.time;
+            long nanoTime = entry.nanoTime;
+            long id = entry.id;
+            int size = entry.size;
+            long duration = entry.duration;
+            byte[] payload = entry.payload;
+
+            // Overwritten while it was copied. Unlike a plain re-read, the copy can not be reordered after the CAS.
+            if (!sequences.compareAndSet(index, before, before)) {
+                continue;
+            }
+
+            records.add(new TraceRecord(before, time, nanoTime, type, eventClass, channel, id, size, duration,
+                    payload == null ? null : payloadDecoder.apply(payload)));
+        }
+
+        records.sort(Comparator.comparingLong(TraceRecord::getSequence));
+        return records;
+    }
+
+    /**
+     * @return the records in the buffer, oldest first, one per line
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (TraceRecord record : snapshot()) {
+            builder.append(record).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Dumps the buffer unless it was already dumped less than the interval ago, so a burst of timeouts is dumped once
+     *
+     * @return the dump, null if it was skipped
+     */
+    public @Nullable String dumpAtMostEvery(long interval, TimeUnit unit) {
+        long now = System.nanoTime();
+        long last = lastDump.get();
+        if (last != Long.MIN_VALUE && now - last < unit.toNanos(interval)) {
+            return null;
+        }
+        if (!lastDump.compareAndSet(last, now)) {
+            return null;
+        }
+        return dump();
+    }
+
+    // Guarded by its sequence
+    private static class Entry {
+
+        private long time;
+        private long nanoTime;
+        private TraceRecord.Type type;
+        private String eventClass;
+        private String channel;
+        private long id;
+        private int size;
+        private long duration;
+        private byte[] payload;
+    }
+}
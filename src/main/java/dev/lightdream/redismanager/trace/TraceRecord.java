@@ -0,0 +1,82 @@
+package dev.lightdream.redismanager.trace;
+
+import lombok.Getter;
+import org.jetbrains.annotations.Nullable;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A copy of an entry of the {@link RedisTracer} ring buffer
+ */
+@Getter
+public class TraceRecord {
+
+    private final long sequence;
+    private final long time;
+    private final long nanoTime;
+    private final Type type;
+    private final String eventClass;
+    private final String channel;
+    private final long id;
+    private final int size;
+    private final long duration;
+    private final @Nullable String payload;
+
+    TraceRecord(long sequence, long time, long nanoTime, Type type, String eventClass, String channel, long id,
+                int size, long duration, @Nullable String payload) {
+        this.sequence = sequence;
+        this.time = time;
+        this.nanoTime = nanoTime;
+        this.type = type;
+        this.eventClass = eventClass;
+        this.channel = channel;
+        this.id = id;
+        this.size = size;
+        this.duration = duration;
+        this.payload = payload;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(time)))
+                .append(' ').append(type)
+                .append(" #").append(id)
+                .append(' ').append(eventClass)
+                .append(" channel=").append(channel);
+        if (size >= 0) {
+            builder.append(" size=").append(size);
+        }
+        if (duration >= 0) {
+            builder.append(" duration=").append(duration / 1000).append("us");
+        }
+        if (payload != null) {
+            builder.append(" payload=").append(payload);
+        }
+        return builder.toString();
+    }
+
+    public enum Type {
+        /**
+         * An event or a response was published
+         */
+        SEND,
+        /**
+         * An event or a response was received
+         */
+        RECEIVE,
+        /**
+         * The handlers of an event ran, the duration is the time they took
+         */
+        DISPATCH,
+        /**
+         * The response of a request arrived, the duration is the round trip
+         */
+        RESPONSE,
+        /**
+         * A request got no response in time, the duration is the time it waited
+         */
+        TIMEOUT
+    }
+}
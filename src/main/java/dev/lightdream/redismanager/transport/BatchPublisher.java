@@ -0,0 +1,16 @@
+package dev.lightdream.redismanager.transport;
+
+@FunctionalInterface
+public interface BatchPublisher {
+
+    /**
+     * Publishes the first count payloads at once, in a single round trip when the transport allows it
+     *
+     * @param channels the channel of each payload
+     * @return the number of receivers of each payload
+     * @throws RuntimeException if the payloads could not be published, a
+     *                          {@link redis.clients.jedis.exceptions.JedisConnectionException} if the connection failed
+     */
+    long[] publish(byte[][] channels, byte[][] payloads, int count);
+
+}
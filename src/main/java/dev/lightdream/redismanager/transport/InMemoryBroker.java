@@ -0,0 +1,141 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.manager.RedisManager;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * A broker in the JVM, shared by several {@link RedisManager} to simulate a cluster of nodes without a Redis server.
+ * The events go through the same codec, correlation and dispatch path as with Redis:
+ * <pre>
+ * InMemoryBroker broker = new InMemoryBroker(500, TimeUnit.MICROSECONDS);
+ * RedisManager node = RedisManager.builder()
+ *         .redisConfig(config)
+ *         .transportFactory(broker::connect)
+ *         .build();
+ * </pre>
+ * The latency is the one way latency between a node and the broker. Publishing waits for a round trip, once per batch,
+ * and the payload reaches the subscribers one latency after the broker, like with a Redis server.
+ * <p>
+ * Channels subscribed with {@link RedisTransport#subscribeShared(String)} hand each payload to a single subscriber, in
+ * turns.
+ */
+public class InMemoryBroker {
+
+    private final long latencyNanos;
+    private final ChannelNameCache channelNames = new ChannelNameCache();
+    private final Map<String, Set<InMemoryTransport>> subscribers = new ConcurrentHashMap<>();
+    private final Map<String, SharedGroup> sharedGroups = new ConcurrentHashMap<>();
+
+    public InMemoryBroker() {
+        this(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param latency the one way latency between a node and the broker
+     */
+    public InMemoryBroker(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Connects a new node to the broker, usable as a {@link RedisTransport.Factory}
+     */
+    public RedisTransport connect(RedisManager manager, BiConsumer<byte[], byte[]> messageHandler,
+                                  Consumer<Throwable> connectionLostHandler) {
+        return new InMemoryTransport(this, manager.debugger(), messageHandler);
+    }
+
+    long publish(byte[] channel, byte[] payload) {
+        pause(latencyNanos);
+        long receivers = route(channel, payload, System.nanoTime() + latencyNanos);
+        pause(latencyNanos);
+        return receivers;
+    }
+
+    long[] publish(byte[][] channels, byte[][] payloads, int count) {
+        pause(latencyNanos);
+        long deliverAt = System.nanoTime() + latencyNanos;
+        long[] receivers = new long[count];
+        for (int i = 0; i < count; i++) {
+            receivers[i] = route(channels[i], payloads[i], deliverAt);
+        }
+        pause(latencyNanos);
+        return receivers;
+    }
+
+    private long route(byte[] channel, byte[] payload, long deliverAt) {
+        String name = channelNames.decode(channel);
+        long receivers = 0;
+
+        Set<InMemoryTransport> channelSubscribers = subscribers.get(name);
+        if (channelSubscribers != null) {
+            for (InMemoryTransport subscriber : channelSubscribers) {
+                subscriber.deliver(channel, payload, deliverAt);
+                receivers++;
+            }
+        }
+
+        SharedGroup group = sharedGroups.get(name);
+        if (group != null) {
+            InMemoryTransport[] members = group.members.toArray(new InMemoryTransport[0]);
+            if (members.length != 0) {
+                members[Math.floorMod(group.next.getAndIncrement(), members.length)]
+                        .deliver(channel, payload, deliverAt);
+                receivers++;
+            }
+        }
+
+        return receivers;
+    }
+
+    void subscribe(String channel, InMemoryTransport transport) {
+        subscribers.computeIfAbsent(channel, key -> new CopyOnWriteArraySet<>()).add(transport);
+    }
+
+    void subscribeShared(String channel, InMemoryTransport transport) {
+        sharedGroups.computeIfAbsent(channel, key -> new SharedGroup()).members.addIfAbsent(transport);
+    }
+
+    void unsubscribe(String channel, InMemoryTransport transport) {
+        Set<InMemoryTransport> channelSubscribers = subscribers.get(channel);
+        if (channelSubscribers != null) {
+            channelSubscribers.remove(transport);
+        }
+
+        SharedGroup group = sharedGroups.get(channel);
+        if (group != null) {
+            group.members.remove(transport);
+        }
+    }
+
+    static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    private static class SharedGroup {
+
+        private final CopyOnWriteArrayList<InMemoryTransport> members = new CopyOnWriteArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+    }
+}
@@ -0,0 +1,154 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
+import dev.lightdream.redismanager.manager.RedisDebugger;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A node connected to an {@link InMemoryBroker}. Payloads are received on a thread of the node, in the order the
+ * broker routed them, like on the subscriber connection of Redis.
+ */
+class InMemoryTransport implements RedisTransport {
+
+    private static final AtomicInteger transportCounter = new AtomicInteger();
+
+    private final InMemoryBroker broker;
+    private final RedisDebugger debugger;
+    private final BiConsumer<byte[], byte[]> messageHandler;
+    private final Set<String> channels = new CopyOnWriteArraySet<>();
+    private final LinkedBlockingQueue<Message> inbox = new LinkedBlockingQueue<>();
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final Thread thread;
+
+    private volatile RedisConnectionSupervisor.State state = RedisConnectionSupervisor.State.CONNECTING;
+    private volatile Runnable connectedListener = () -> {
+    };
+
+    InMemoryTransport(InMemoryBroker broker, RedisDebugger debugger, BiConsumer<byte[], byte[]> messageHandler) {
+        this.broker = broker;
+        this.debugger = debugger;
+        this.messageHandler = messageHandler;
+
+        this.thread = new Thread(this::run, "RedisManager-InMemory-" + transportCounter.incrementAndGet());
+        this.thread.setDaemon(true);
+    }
+
+    @Override
+    public long publish(byte[] channel, byte[] payload) {
+        checkRunning();
+        return broker.publish(channel, payload);
+    }
+
+    @Override
+    public long[] publish(byte[][] channels, byte[][] payloads, int count) {
+        checkRunning();
+        return broker.publish(channels, payloads, count);
+    }
+
+    private void checkRunning() {
+        if (state == RedisConnectionSupervisor.State.STOPPED) {
+            throw new IllegalStateException("Transport has been shut down");
+        }
+    }
+
+    @Override
+    public void subscribe(String channel) {
+        if (channels.add(channel)) {
+            broker.subscribe(channel, this);
+            debugger.subscribed(channel);
+        }
+    }
+
+    @Override
+    public void subscribeShared(String channel) {
+        if (channels.add(channel)) {
+            broker.subscribeShared(channel, this);
+            debugger.subscribed(channel);
+        }
+    }
+
+    @Override
+    public void unsubscribe(String channel) {
+        if (channels.remove(channel)) {
+            broker.unsubscribe(channel, this);
+            debugger.unsubscribed(channel);
+        }
+    }
+
+    @Override
+    public void start() {
+        state = RedisConnectionSupervisor.State.CONNECTED;
+        thread.start();
+        started.countDown();
+        connectedListener.run();
+    }
+
+    @Override
+    public boolean awaitConnected(long timeout) throws InterruptedException {
+        return started.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onConnected(Runnable listener) {
+        this.connectedListener = listener;
+    }
+
+    @Override
+    public RedisConnectionSupervisor.State state() {
+        return state;
+    }
+
+    @Override
+    public void shutdown() {
+        state = RedisConnectionSupervisor.State.STOPPED;
+        for (String channel : channels) {
+            broker.unsubscribe(channel, this);
+        }
+        channels.clear();
+        thread.interrupt();
+    }
+
+    void deliver(byte[] channel, byte[] payload, long deliverAt) {
+        inbox.add(new Message(channel, payload, deliverAt));
+    }
+
+    private void run() {
+        while (state != RedisConnectionSupervisor.State.STOPPED) {
+            Message message;
+            try {
+                message = inbox.take();
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown
+                return;
+            }
+
+            InMemoryBroker.pause(message.deliverAt - System.nanoTime());
+            try {
+                messageHandler.accept(message.channel, message.payload);
+            } catch (Throwable throwable) {
+                Logger.error("There was an error while receiving a message from the in memory broker.");
+            }
+        }
+    }
+
+    private static class Message {
+
+        private final byte[] channel;
+        private final byte[] payload;
+        private final long deliverAt;
+
+        private Message(byte[] channel, byte[] payload, long deliverAt) {
+            this.channel = channel;
+            this.payload = payload;
+            this.deliverAt = deliverAt;
+        }
+    }
+}
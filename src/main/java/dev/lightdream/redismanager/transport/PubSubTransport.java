@@ -0,0 +1,97 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
+import dev.lightdream.redismanager.manager.RedisDebugger;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Redis pub/sub. Payloads are published on the connections of the pool and received on the subscriber connection kept
+ * alive by the {@link RedisConnectionSupervisor}.
+ */
+public class PubSubTransport implements RedisTransport {
+
+    private final JedisPool pool;
+    private final RedisConnectionSupervisor supervisor;
+
+    public PubSubTransport(RedisConfig config, RedisDebugger debugger, ChannelNameCache channelNames,
+                           JedisPool pool, BiConsumer<byte[], byte[]> messageHandler,
+                           Consumer<Throwable> connectionLostHandler) {
+        this.pool = pool;
+        this.supervisor = new RedisConnectionSupervisor(config, debugger, channelNames, messageHandler,
+                connectionLostHandler);
+    }
+
+    public RedisConnectionSupervisor supervisor() {
+        return supervisor;
+    }
+
+    @Override
+    public long publish(byte[] channel, byte[] payload) {
+        try (Jedis jedis = pool.getResource()) {
+            return jedis.publish(channel, payload);
+        }
+    }
+
+    @Override
+    public long[] publish(byte[][] channels, byte[][] payloads, int count) {
+        List<Response<Long>> responses = new ArrayList<>(count);
+        try (Jedis jedis = pool.getResource()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < count; i++) {
+                responses.add(pipeline.publish(channels[i], payloads[i]));
+            }
+            pipeline.sync();
+        }
+
+        long[] receivers = new long[count];
+        for (int i = 0; i < count; i++) {
+            receivers[i] = responses.get(i).get();
+        }
+        return receivers;
+    }
+
+    @Override
+    public void subscribe(String channel) {
+        supervisor.subscribe(channel);
+    }
+
+    @Override
+    public void unsubscribe(String channel) {
+        supervisor.unsubscribe(channel);
+    }
+
+    @Override
+    public void start() {
+        supervisor.start();
+    }
+
+    @Override
+    public boolean awaitConnected(long timeout) throws InterruptedException {
+        return supervisor.awaitConnected(timeout);
+    }
+
+    @Override
+    public void onConnected(Runnable listener) {
+        supervisor.onConnected(listener);
+    }
+
+    @Override
+    public RedisConnectionSupervisor.State state() {
+        return supervisor.state();
+    }
+
+    @Override
+    public void shutdown() {
+        supervisor.shutdown();
+    }
+}
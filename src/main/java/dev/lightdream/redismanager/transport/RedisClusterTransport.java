@@ -0,0 +1,727 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
+import dev.lightdream.redismanager.manager.RedisDebugger;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.BinaryJedisShardedPubSub;
+import redis.clients.jedis.Connection;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisClientConfig;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Protocol;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisClusterOperationException;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Carries the events over the sharded pub/sub of a Redis Cluster (SPUBLISH / SSUBSCRIBE). Classic pub/sub messages are
+ * forwarded to every shard of the cluster, sharded ones only reach the shard that owns the slot of their channel, so
+ * the throughput grows with the number of shards. Every channel is sharded, the broadcast channels too: with
+ * {@link RedisConfig#isInterestChannels()} the broadcasts of the event classes are spread over the shards as well.
+ * <p>
+ * The channels are grouped by the shard that owns their slot and subscribed together on one connection per shard.
+ * When a slot is migrated the shard unsubscribes its channels, they are then moved to the subscriber of their new
+ * owner. Lost connections are retried with the backoff of the {@link RedisConnectionSupervisor}.
+ * <p>
+ * The channel of this node receives an empty heartbeat every {@link RedisConfig#getHeartbeatInterval()}, the
+ * connection of its shard is dropped and established again if nothing arrived on it for 3 intervals.
+ */
+public class RedisClusterTransport implements RedisTransport {
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final byte[] HEARTBEAT = new byte[0];
+    private static final AtomicInteger subscriberCounter = new AtomicInteger();
+
+    private final RedisConfig config;
+    private final RedisDebugger debugger;
+    private final ChannelNameCache channelNames;
+    private final BiConsumer<byte[], byte[]> messageHandler;
+    private final Consumer<Throwable> connectionLostHandler;
+    private final Set<HostAndPort> nodes = new HashSet<>();
+    private final JedisClientConfig clientConfig;
+    private final Set<String> channels = ConcurrentHashMap.newKeySet();
+    // The subscriber of each shard and the subscriber each channel is assigned to, changed by the router under shards
+    private final Map<HostAndPort, Shard> shards = new ConcurrentHashMap<>();
+    private final Map<String, Shard> owners = new ConcurrentHashMap<>();
+    private final AtomicBoolean rerouteRequested = new AtomicBoolean();
+    private final AtomicBoolean renewRequested = new AtomicBoolean();
+    private final CountDownLatch firstConnection = new CountDownLatch(1);
+    private final Thread router;
+    private final Thread heartbeat;
+
+    private volatile @Nullable ClusterConnectionProvider provider;
+    private volatile @Nullable JedisCluster cluster;
+    private volatile @Nullable Throwable routeError;
+    private volatile @Nullable Throwable lastError;
+    private volatile boolean running = true;
+    private volatile boolean started;
+    private volatile Runnable connectedListener = () -> {
+    };
+
+    /**
+     * @param messageHandler        called with the channel and the payload of every message received
+     * @param connectionLostHandler called once every time the established connection of the channel of this node is
+     *                              lost
+     */
+    public RedisClusterTransport(RedisConfig config, RedisDebugger debugger, ChannelNameCache channelNames,
+                                 BiConsumer<byte[], byte[]> messageHandler,
+                                 Consumer<Throwable> connectionLostHandler) {
+        this.config = config;
+        this.debugger = debugger;
+        this.channelNames = channelNames;
+        this.messageHandler = messageHandler;
+        this.connectionLostHandler = connectionLostHandler;
+
+        if (config.getClusterNodes().isEmpty()) {
+            nodes.add(new HostAndPort(config.getHost(), config.getPort()));
+        }
+        for (String node : config.getClusterNodes()) {
+            nodes.add(HostAndPort.from(node));
+        }
+
+        this.clientConfig = DefaultJedisClientConfig.builder()
+                .connectionTimeoutMillis(config.getConnectTimeout())
+                .socketTimeoutMillis(config.getSocketTimeout())
+                .password(config.getPassword())
+                .build();
+
+        this.router = new Thread(this::route, "RedisManager-ClusterRouter");
+        this.router.setDaemon(true);
+        this.heartbeat = new Thread(this::heartbeat, "RedisManager-ClusterHeartbeat");
+        this.heartbeat.setDaemon(true);
+    }
+
+    /**
+     * Connects to the cluster the first time it is used, so a cluster that is down when the node starts is retried
+     */
+    private synchronized JedisCluster cluster() {
+        JedisCluster cluster = this.cluster;
+        if (cluster != null) {
+            return cluster;
+        }
+        if (!running) {
+            throw new IllegalStateException("Transport has been shut down");
+        }
+
+        try {
+            ClusterConnectionProvider provider = new ClusterConnectionProvider(nodes, clientConfig);
+            this.provider = provider;
+            this.cluster = cluster = new JedisCluster(provider, MAX_ATTEMPTS,
+                    Duration.ofMillis((long) config.getSocketTimeout() * MAX_ATTEMPTS));
+            return cluster;
+        } catch (JedisClusterOperationException e) {
+            throw new JedisConnectionException("Unable to reach the redis cluster", e);
+        }
+    }
+
+    private ClusterConnectionProvider provider() {
+        cluster();
+        //noinspection DataFlowIssue
+        return provider;
+    }
+
+    @Override
+    public long publish(byte[] channel, byte[] payload) {
+        try {
+            return cluster().spublish(channel, payload);
+        } catch (JedisClusterOperationException e) {
+            throw new JedisConnectionException("Unable to publish on the redis cluster", e);
+        }
+    }
+
+    /**
+     * Pipelines the payloads of each shard on a connection to the shard. Payloads whose slot moved in the meantime
+     * are published again one by one, following the redirection.
+     */
+    @Override
+    public long[] publish(byte[][] channels, byte[][] payloads, int count) {
+        ClusterConnectionProvider provider = provider();
+
+        Map<HostAndPort, List<Integer>> shards = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            HostAndPort node = provider.getNode(JedisClusterCRC16.getSlot(channels[i]));
+            if (node == null) {
+                provider.renewSlotCache();
+                node = provider.getNode(JedisClusterCRC16.getSlot(channels[i]));
+                if (node == null) {
+                    throw new JedisConnectionException("No node of the redis cluster serves the slot of " +
+                            channelNames.decode(channels[i]));
+                }
+            }
+            shards.computeIfAbsent(node, key -> new ArrayList<>()).add(i);
+        }
+
+        long[] receivers = new long[count];
+        for (Map.Entry<HostAndPort, List<Integer>> shard : shards.entrySet()) {
+            List<Integer> indexes = shard.getValue();
+            List<Response<Object>> responses = new ArrayList<>(indexes.size());
+            try (Connection connection = provider.getConnection(shard.getKey())) {
+                Pipeline pipeline = new Pipeline(connection);
+                for (int index : indexes) {
+                    responses.add(pipeline.sendCommand(Protocol.Command.SPUBLISH, channels[index], payloads[index]));
+                }
+                pipeline.sync();
+            }
+
+            for (int i = 0; i < indexes.size(); i++) {
+                int index = indexes.get(i);
+                try {
+                    receivers[index] = (Long) responses.get(i).get();
+                } catch (JedisRedirectionException e) {
+                    receivers[index] = publish(channels[index], payloads[index]);
+                }
+            }
+        }
+        return receivers;
+    }
+
+    /**
+     * The channel is assigned to the subscriber of its shard by the router thread, so the caller never waits for the
+     * cluster
+     */
+    @Override
+    public void subscribe(String channel) {
+        if (channels.add(channel)) {
+            reroute(false);
+        }
+    }
+
+    /**
+     * Messages of the channel are not delivered anymore once this returns, even if the shard did not confirm the
+     * unsubscribe yet
+     */
+    @Override
+    public void unsubscribe(String channel) {
+        if (channels.remove(channel)) {
+            reroute(false);
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        started = true;
+        router.start();
+        heartbeat.start();
+        reroute(false);
+    }
+
+    /**
+     * Waits until the channel of this node is subscribed for the first time
+     *
+     * @return true if it was subscribed in time
+     */
+    @Override
+    public boolean awaitConnected(long timeout) throws InterruptedException {
+        return firstConnection.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param listener run every time the channel of this node is subscribed, the first time included
+     */
+    @Override
+    public void onConnected(Runnable listener) {
+        this.connectedListener = listener;
+    }
+
+    /**
+     * @return {@link RedisConnectionSupervisor.State#CONNECTED} once every channel is subscribed,
+     * {@link RedisConnectionSupervisor.State#DISCONNECTED} while the cluster or the connection of a shard is being
+     * retried
+     */
+    @Override
+    public RedisConnectionSupervisor.State state() {
+        if (!running) {
+            return RedisConnectionSupervisor.State.STOPPED;
+        }
+        if (!started) {
+            return RedisConnectionSupervisor.State.CONNECTING;
+        }
+        if (routeError != null) {
+            return RedisConnectionSupervisor.State.DISCONNECTED;
+        }
+
+        RedisConnectionSupervisor.State state = RedisConnectionSupervisor.State.CONNECTED;
+        for (String channel : channels) {
+            Shard shard = owners.get(channel);
+            RedisConnectionSupervisor.State shardState = shard == null ?
+                    RedisConnectionSupervisor.State.CONNECTING : shard.state;
+            if (shardState == RedisConnectionSupervisor.State.DISCONNECTED) {
+                return RedisConnectionSupervisor.State.DISCONNECTED;
+            }
+            if (shardState == RedisConnectionSupervisor.State.CONNECTING) {
+                state = RedisConnectionSupervisor.State.CONNECTING;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * @return the error that caused the last failure to reach the cluster or the last disconnect of a shard, if any
+     */
+    public @Nullable Throwable lastError() {
+        return lastError;
+    }
+
+    /**
+     * @return the number of shards subscribed to, one connection each
+     */
+    public int shards() {
+        return shards.size();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (this) {
+            running = false;
+        }
+        router.interrupt();
+        heartbeat.interrupt();
+
+        synchronized (shards) {
+            for (Shard shard : shards.values()) {
+                shard.stop();
+            }
+            shards.clear();
+            owners.clear();
+        }
+
+        JedisCluster cluster = this.cluster;
+        if (cluster != null) {
+            cluster.close();
+        }
+    }
+
+    /**
+     * Wakes up the router to assign the channels to the subscribers of their shards again
+     *
+     * @param renew true to fetch the slots of the cluster again first, after a migration or a lost shard
+     */
+    private void reroute(boolean renew) {
+        if (renew) {
+            renewRequested.set(true);
+        }
+        rerouteRequested.set(true);
+        LockSupport.unpark(router);
+    }
+
+    private void route() {
+        int attempt = 0;
+        while (running) {
+            if (!rerouteRequested.getAndSet(false)) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                assign(routes(renewRequested.getAndSet(false)));
+                routeError = null;
+                attempt = 0;
+                continue;
+            } catch (Exception e) {
+                if (routeError == null) {
+                    Logger.error("Unable to reach the redis cluster. Retrying...");
+                    if (Debugger.isEnabled()) {
+                        //noinspection CallToPrintStackTrace
+                        e.printStackTrace();
+                    }
+                }
+                routeError = e;
+                lastError = e;
+                reroute(true);
+            }
+
+            try {
+                Thread.sleep(RedisConnectionSupervisor.backoffDelay(config, attempt++));
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the shard owning the slot of every channel
+     */
+    private Map<String, HostAndPort> routes(boolean renew) {
+        ClusterConnectionProvider provider = provider();
+        if (renew) {
+            provider.renewSlotCache();
+        }
+
+        Map<String, HostAndPort> routes = new HashMap<>();
+        for (String channel : channels) {
+            int slot = JedisClusterCRC16.getSlot(channelNames.encode(channel));
+            HostAndPort node = provider.getNode(slot);
+            if (node == null) {
+                provider.renewSlotCache();
+                node = provider.getNode(slot);
+            }
+            if (node == null) {
+                throw new JedisConnectionException("No node of the redis cluster serves the slot " + slot + " of " +
+                        channel);
+            }
+            routes.put(channel, node);
+        }
+        return routes;
+    }
+
+    /**
+     * Moves the channels to the subscribers of their shards and stops the subscribers left without channels
+     */
+    private void assign(Map<String, HostAndPort> routes) {
+        synchronized (shards) {
+            if (!running) {
+                return;
+            }
+
+            for (Iterator<Map.Entry<String, Shard>> iterator = owners.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<String, Shard> owner = iterator.next();
+                if (!owner.getValue().node.equals(routes.get(owner.getKey()))) {
+                    owner.getValue().remove(owner.getKey());
+                    iterator.remove();
+                }
+            }
+
+            for (Map.Entry<String, HostAndPort> route : routes.entrySet()) {
+                Shard shard = shards.computeIfAbsent(route.getValue(), Shard::new);
+                owners.put(route.getKey(), shard);
+                // Also subscribes again a channel the shard unsubscribed while its slot was being migrated back
+                shard.add(route.getKey());
+            }
+
+            for (Iterator<Shard> iterator = shards.values().iterator(); iterator.hasNext(); ) {
+                Shard shard = iterator.next();
+                if (shard.isEmpty()) {
+                    shard.stop();
+                    iterator.remove();
+                } else {
+                    shard.start();
+                }
+            }
+        }
+    }
+
+    /**
+     * Publishes the heartbeat of the channel of this node and drops the connection of its shard if the previous ones
+     * did not arrive
+     */
+    private void heartbeat() {
+        byte[] channel = channelNames.encode(config.getChannel());
+        long interval = config.getHeartbeatInterval();
+
+        while (running) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                // Interrupted by shutdown
+                return;
+            }
+
+            Shard shard = owners.get(config.getChannel());
+            if (shard == null || shard.state != RedisConnectionSupervisor.State.CONNECTED) {
+                continue;
+            }
+
+            try {
+                publish(channel, HEARTBEAT);
+            } catch (Exception ignored) {
+                // The subscriber notices the broken connection
+            }
+
+            if (System.nanoTime() - shard.lastMessage > TimeUnit.MILLISECONDS.toNanos(interval * 3)) {
+                synchronized (shard.lock) {
+                    shard.drop();
+                }
+            }
+        }
+    }
+
+    /**
+     * Subscribes the channels assigned to a shard on one connection to it
+     */
+    private class Shard {
+
+        private final HostAndPort node;
+        private final Thread thread;
+        private final Object lock = new Object();
+        // Guarded by lock: the channels assigned to the shard, the ones sent on the connection and whether the
+        // shard confirmed the connection
+        private final Set<String> assigned = new HashSet<>();
+        private final Set<String> subscribed = new HashSet<>();
+        private boolean confirmed;
+        private @Nullable Connection connection;
+        private @Nullable BinaryJedisShardedPubSub pubSub;
+
+        private volatile RedisConnectionSupervisor.State state = RedisConnectionSupervisor.State.CONNECTING;
+        private volatile boolean active = true;
+        private volatile long lastMessage;
+        private int attempt;
+
+        private Shard(HostAndPort node) {
+            this.node = node;
+            this.thread = new Thread(this::run, "RedisManager-ClusterSubscriber-" +
+                    subscriberCounter.incrementAndGet());
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            if (thread.getState() == Thread.State.NEW) {
+                thread.start();
+            }
+        }
+
+        /**
+         * Closes the connection, an unconfirmed subscription included, so nothing is delivered after it
+         */
+        private void stop() {
+            active = false;
+            synchronized (lock) {
+                drop();
+            }
+            thread.interrupt();
+        }
+
+        private boolean isEmpty() {
+            synchronized (lock) {
+                return assigned.isEmpty();
+            }
+        }
+
+        private void add(String channel) {
+            synchronized (lock) {
+                assigned.add(channel);
+                if (confirmed && !subscribed.contains(channel)) {
+                    subscribeNow(channel);
+                }
+            }
+        }
+
+        private void remove(String channel) {
+            synchronized (lock) {
+                assigned.remove(channel);
+                if (confirmed && subscribed.contains(channel)) {
+                    unsubscribeNow(channel);
+                }
+            }
+        }
+
+        /**
+         * Breaks the connection, the subscriber thread then connects again. Holding lock.
+         */
+        private void drop() {
+            Connection connection = this.connection;
+            if (connection != null) {
+                try {
+                    connection.disconnect();
+                } catch (Exception ignored) {
+                    // Already broken
+                }
+            }
+        }
+
+        private void run() {
+            while (running && active) {
+                boolean failed = false;
+                boolean primaryLost;
+                try (Connection connection = new Connection(node, clientConfig)) {
+                    BinaryJedisShardedPubSub pubSub = createPubSub();
+                    byte[][] initial;
+                    synchronized (lock) {
+                        if (!running || !active) {
+                            return;
+                        }
+                        this.connection = connection;
+                        this.pubSub = pubSub;
+                        subscribed.addAll(assigned);
+                        initial = new byte[subscribed.size()][];
+                        int index = 0;
+                        for (String channel : subscribed) {
+                            initial[index++] = channelNames.encode(channel);
+                        }
+                    }
+
+                    // Returns once every channel is unsubscribed, by the shard when their slots were migrated
+                    if (initial.length > 0) {
+                        pubSub.proceed(connection, initial);
+                    }
+                } catch (Exception e) {
+                    failed = true;
+                    lastError = e;
+                } finally {
+                    synchronized (lock) {
+                        primaryLost = confirmed && subscribed.contains(config.getChannel());
+                        this.connection = null;
+                        this.pubSub = null;
+                        subscribed.clear();
+                        confirmed = false;
+                    }
+                }
+
+                if (!running || !active) {
+                    return;
+                }
+
+                if (failed) {
+                    onDisconnected(primaryLost);
+                } else {
+                    state = RedisConnectionSupervisor.State.CONNECTING;
+                }
+                // The channels may have moved to another shard, a failed over one included
+                reroute(true);
+                try {
+                    Thread.sleep(RedisConnectionSupervisor.backoffDelay(config, failed ? attempt++ : 0));
+                } catch (InterruptedException e) {
+                    // Interrupted by stop
+                }
+            }
+        }
+
+        /**
+         * Called with the first confirmed channel of a connection, catches up the channels assigned or removed while
+         * subscribing
+         */
+        private void confirm() {
+            synchronized (lock) {
+                if (confirmed) {
+                    return;
+                }
+                confirmed = true;
+
+                for (String channel : assigned) {
+                    if (!subscribed.contains(channel)) {
+                        subscribeNow(channel);
+                    }
+                }
+                for (String channel : new HashSet<>(subscribed)) {
+                    if (!assigned.contains(channel)) {
+                        unsubscribeNow(channel);
+                    }
+                }
+            }
+
+            if (state == RedisConnectionSupervisor.State.DISCONNECTED) {
+                Logger.good("Reconnected to shard " + node + " of the redis cluster.");
+            }
+            attempt = 0;
+            state = RedisConnectionSupervisor.State.CONNECTED;
+        }
+
+        // Holding lock
+        private void subscribeNow(String channel) {
+            BinaryJedisShardedPubSub pubSub = this.pubSub;
+            if (pubSub != null) {
+                subscribed.add(channel);
+                send(() -> pubSub.ssubscribe(channelNames.encode(channel)));
+            }
+        }
+
+        // Holding lock
+        private void unsubscribeNow(String channel) {
+            BinaryJedisShardedPubSub pubSub = this.pubSub;
+            if (pubSub != null) {
+                subscribed.remove(channel);
+                send(() -> pubSub.sunsubscribe(channelNames.encode(channel)));
+            }
+        }
+
+        // Holding lock
+        private void send(Runnable command) {
+            try {
+                command.run();
+            } catch (Exception ignored) {
+                // The subscriber thread notices the broken connection, all the channels are subscribed again after it
+            }
+        }
+
+        private BinaryJedisShardedPubSub createPubSub() {
+            return new BinaryJedisShardedPubSub() {
+                @Override
+                public void onSMessage(byte[] channel, byte[] message) {
+                    lastMessage = System.nanoTime();
+                    // Stopped, or the channel was unsubscribed before the shard confirmed it
+                    if (!active || !channels.contains(channelNames.decode(channel))) {
+                        return;
+                    }
+                    messageHandler.accept(channel, message);
+                }
+
+                @Override
+                public void onSSubscribe(byte[] channel, int subscribedChannels) {
+                    lastMessage = System.nanoTime();
+                    String name = channelNames.decode(channel);
+                    debugger.subscribed(name);
+                    confirm();
+
+                    if (name.equals(config.getChannel())) {
+                        firstConnection.countDown();
+                        connectedListener.run();
+                    }
+                }
+
+                @Override
+                public void onSUnsubscribe(byte[] channel, int subscribedChannels) {
+                    lastMessage = System.nanoTime();
+                    String name = channelNames.decode(channel);
+                    debugger.unsubscribed(name);
+
+                    boolean migrated;
+                    synchronized (lock) {
+                        // Unsubscribed by the shard rather than by unsubscribeNow
+                        migrated = subscribed.remove(name) && assigned.contains(name);
+                    }
+                    if (migrated) {
+                        reroute(true);
+                    }
+                }
+            };
+        }
+
+        private void onDisconnected(boolean primaryLost) {
+            boolean wasConnected = state == RedisConnectionSupervisor.State.CONNECTED;
+            state = RedisConnectionSupervisor.State.DISCONNECTED;
+
+            if (!wasConnected) {
+                if (attempt == 0) {
+                    Logger.error("Unable to connect to shard " + node + " of the redis cluster. Retrying...");
+                }
+                return;
+            }
+
+            Logger.error("Lost the connection to shard " + node + " of the redis cluster. Reconnecting...");
+            if (Debugger.isEnabled() && lastError != null) {
+                //noinspection CallToPrintStackTrace
+                lastError.printStackTrace();
+            }
+
+            if (primaryLost) {
+                connectionLostHandler.accept(lastError);
+            }
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.logger.Logger;
+import dev.lightdream.redismanager.codec.ChannelNameCache;
+import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
+import dev.lightdream.redismanager.manager.RedisDebugger;
+import org.jetbrains.annotations.Nullable;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.jedis.params.XAddParams;
+import redis.clients.jedis.params.XAutoClaimParams;
+import redis.clients.jedis.params.XReadGroupParams;
+import redis.clients.jedis.resps.StreamConsumerInfo;
+import redis.clients.jedis.resps.StreamGroupInfo;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Carries the events over Redis Streams instead of pub/sub. Every channel is a stream capped at about
+ * {@link RedisConfig#getStreamMaxLength()} entries, read through a consumer group with XREADGROUP in batches of
+ * {@link RedisConfig#getStreamBatchSize()} entries. Entries are acknowledged with XACK once handed to the message
+ * handler.
+ * <p>
+ * The channel of this node and the broadcast channel are read through a consumer group of their own, so every node
+ * receives all of their events like with pub/sub. The shared channels (see {@link RedisConfig#getStreamGroups()}) are
+ * read through a consumer group common to all the nodes reading them, so each event is received by a single node and a
+ * target scales by adding nodes. Entries a consumer did not acknowledge for {@link RedisConfig#getStreamClaimIdle()}
+ * are claimed by another consumer of the group, so the events taken by a node that died are not lost.
+ * <p>
+ * A node that crashed, or restarted with another redis id, leaves its consumer groups on the broadcast streams and the
+ * stream of its channel behind. Every {@link RedisConfig#getStreamGroupIdle()} the node reader removes the groups whose
+ * consumers did not read for that long, along with the stream of their node. Events sent to a node that stays down
+ * longer are lost.
+ */
+public class RedisStreamTransport implements RedisTransport {
+
+    public static final byte[] PAYLOAD_FIELD = {'e'};
+
+    private static final byte[] NEW_ENTRIES_ID = {'$'};
+    private static final byte[] FIRST_ENTRY_ID = {'0'};
+    private static final byte[] UNDELIVERED_ID = {'>'};
+    private static final byte[] CLAIM_START_ID = "0-0".getBytes(StandardCharsets.UTF_8);
+
+    private final RedisConfig config;
+    private final RedisDebugger debugger;
+    private final ChannelNameCache channelNames;
+    private final Supplier<Jedis> connections;
+    private final BiConsumer<byte[], byte[]> messageHandler;
+    private final Consumer<Throwable> connectionLostHandler;
+    private final byte[] consumerName;
+    private final XAddParams addParams;
+    private final XReadGroupParams readParams;
+    private final XAutoClaimParams claimParams;
+    private final Reader nodeReader;
+    private final Reader sharedReader;
+
+    private volatile boolean running = true;
+    private volatile boolean started;
+    private volatile Runnable connectedListener = () -> {
+    };
+
+    /**
+     * @param connections           supplies the connections used outside the reader threads
+     * @param messageHandler        called with the channel and the payload of every entry read
+     * @param connectionLostHandler called once every time the established connection of the node reader is lost
+     */
+    public RedisStreamTransport(RedisConfig config, RedisDebugger debugger, ChannelNameCache channelNames,
+                                Supplier<Jedis> connections, BiConsumer<byte[], byte[]> messageHandler,
+                                Consumer<Throwable> connectionLostHandler) {
+        this.config = config;
+        this.debugger = debugger;
+        this.channelNames = channelNames;
+        this.connections = connections;
+        this.messageHandler = messageHandler;
+        this.connectionLostHandler = connectionLostHandler;
+        this.consumerName = channelNames.encode(config.getRedisID());
+
+        this.addParams = XAddParams.xAddParams()
+                .maxLen(config.getStreamMaxLength())
+                .approximateTrimming();
+        this.readParams = XReadGroupParams.xReadGroupParams()
+                .count(config.getStreamBatchSize())
+                .block(config.getStreamBlock());
+        this.claimParams = XAutoClaimParams.xAutoClaimParams()
+                .count(config.getStreamBatchSize());
+
+        this.nodeReader = new Reader("RedisManager-StreamReader", config.getChannel(), false);
+        this.sharedReader = new Reader("RedisManager-SharedStreamReader", config.getChannelBase(), true);
+    }
+
+    /**
+     * Reads the channel through a consumer group of this node, so the node receives all of its events
+     */
+    @Override
+    public void subscribe(String channel) {
+        nodeReader.add(channel);
+    }
+
+    /**
+     * Reads the channel through the consumer group shared by all the nodes reading it, so each of its events is
+     * received by a single node
+     */
+    @Override
+    public void subscribeShared(String channel) {
+        sharedReader.add(channel);
+    }
+
+    @Override
+    public void unsubscribe(String channel) {
+        nodeReader.streams.remove(channel);
+        sharedReader.streams.remove(channel);
+    }
+
+    @Override
+    public synchronized void start() {
+        started = true;
+        nodeReader.start();
+        sharedReader.start();
+    }
+
+    @Override
+    public boolean awaitConnected(long timeout) throws InterruptedException {
+        return nodeReader.firstConnection.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param listener run every time the connection of the node reader is established, the first time included
+     */
+    @Override
+    public void onConnected(Runnable listener) {
+        this.connectedListener = listener;
+    }
+
+    /**
+     * @return the state of the connection that reads the channel of this node, the one the responses arrive on
+     */
+    @Override
+    public RedisConnectionSupervisor.State state() {
+        return running ? nodeReader.state : RedisConnectionSupervisor.State.STOPPED;
+    }
+
+    /**
+     * @return the error that caused the last disconnect of the node reader, if any
+     */
+    public @Nullable Throwable lastError() {
+        return nodeReader.lastError;
+    }
+
+    /**
+     * Appends the payload to the stream of the channel
+     *
+     * @return 1, streams do not know how many consumers will read the entry
+     */
+    @Override
+    public long publish(byte[] channel, byte[] payload) {
+        try (Jedis jedis = connections.get()) {
+            jedis.xadd(channel, addParams, Collections.singletonMap(PAYLOAD_FIELD, payload));
+            return 1;
+        }
+    }
+
+    @Override
+    public long[] publish(byte[][] channels, byte[][] payloads, int count) {
+        List<Response<byte[]>> responses = new ArrayList<>(count);
+        try (Jedis jedis = connections.get()) {
+            Pipeline pipeline = jedis.pipelined();
+            for (int i = 0; i < count; i++) {
+                responses.add(pipeline.xadd(channels[i], addParams,
+                        Collections.singletonMap(PAYLOAD_FIELD, payloads[i])));
+            }
+            pipeline.sync();
+        }
+
+        long[] receivers = new long[count];
+        for (int i = 0; i < count; i++) {
+            // Throws if the entry was not added
+            responses.get(i).get();
+            receivers[i] = 1;
+        }
+        return receivers;
+    }
+
+    /**
+     * Stops the readers and removes the consumer groups of this node from the broadcast streams, the channel of this
+     * node is kept so the events sent to it are read after a restart with the same redis id
+     */
+    @Override
+    public void shutdown() {
+        running = false;
+        nodeReader.thread.interrupt();
+        sharedReader.thread.interrupt();
+
+        try (Jedis jedis = connections.get()) {
+            for (String channel : nodeReader.streams) {
+                if (!channel.equals(config.getChannel())) {
+                    jedis.xgroupDestroy(channelNames.encode(channel), nodeReader.group);
+                }
+            }
+        } catch (Exception e) {
+            if (Debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private class Reader {
+
+        private final Thread thread;
+        private final byte[] group;
+        private final boolean shared;
+        private final Set<String> streams = new CopyOnWriteArraySet<>();
+        private final CountDownLatch firstConnection = new CountDownLatch(1);
+        // The streams the group was created for on the current connection, only used by the reader thread
+        private final Set<String> ready = new LinkedHashSet<>();
+
+        private volatile RedisConnectionSupervisor.State state = RedisConnectionSupervisor.State.CONNECTING;
+        private volatile @Nullable Throwable lastError;
+        private int attempt;
+        private long nextClaim;
+        private long nextCleanup;
+
+        private Reader(String name, String group, boolean shared) {
+            this.group = channelNames.encode(group);
+            this.shared = shared;
+            this.thread = new Thread(this::run, name);
+            this.thread.setDaemon(true);
+        }
+
+        private void add(String channel) {
+            streams.add(channel);
+            synchronized (RedisStreamTransport.this) {
+                if (started) {
+                    start();
+                }
+            }
+        }
+
+        /**
+         * Starts the thread once there is something to read
+         */
+        private void start() {
+            if (!streams.isEmpty() && thread.getState() == Thread.State.NEW) {
+                thread.start();
+            }
+        }
+
+        private void run() {
+            while (running) {
+                try (Jedis jedis = new Jedis(config.getHost(), config.getPort(), DefaultJedisClientConfig.builder()
+                        .connectionTimeoutMillis(config.getConnectTimeout())
+                        // XREADGROUP holds the connection for up to the block time
+                        .socketTimeoutMillis(config.getStreamBlock() + config.getSocketTimeout())
+                        .password(config.getPassword())
+                        .build())) {
+                    ready.clear();
+                    jedis.ping();
+                    onConnected();
+
+                    while (running) {
+                        createGroups(jedis);
+                        if (shared && System.currentTimeMillis() >= nextClaim) {
+                            claim(jedis);
+                            nextClaim = System.currentTimeMillis() + config.getStreamClaimIdle();
+                        }
+                        if (!shared && System.currentTimeMillis() >= nextCleanup) {
+                            removeIdleGroups(jedis);
+                            nextCleanup = System.currentTimeMillis() + config.getStreamGroupIdle();
+                        }
+                        read(jedis);
+                    }
+                } catch (Exception e) {
+                    lastError = e;
+                }
+
+                if (!running) {
+                    return;
+                }
+
+                onDisconnected();
+                try {
+                    Thread.sleep(RedisConnectionSupervisor.backoffDelay(config, attempt++));
+                } catch (InterruptedException e) {
+                    // Interrupted by shutdown
+                }
+            }
+        }
+
+        private void createGroups(Jedis jedis) {
+            ready.retainAll(streams);
+
+            for (String channel : streams) {
+                if (ready.contains(channel)) {
+                    continue;
+                }
+
+                try {
+                    // Shared streams may hold entries added before the first node of the group started
+                    jedis.xgroupCreate(channelNames.encode(channel), group, shared ? FIRST_ENTRY_ID : NEW_ENTRIES_ID,
+                            true);
+                } catch (JedisDataException e) {
+                    if (e.getMessage() == null || !e.getMessage().startsWith("BUSYGROUP")) {
+                        throw e;
+                    }
+                }
+
+                ready.add(channel);
+                debugger.subscribed(channel);
+            }
+        }
+
+        private void read(Jedis jedis) {
+            if (ready.isEmpty()) {
+                try {
+                    Thread.sleep(config.getStreamBlock());
+                } catch (InterruptedException e) {
+                    // Interrupted by shutdown
+                }
+                return;
+            }
+
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            Map.Entry<byte[], byte[]>[] keys = new Map.Entry[ready.size()];
+            int i = 0;
+            for (String channel : ready) {
+                keys[i++] = new AbstractMap.SimpleImmutableEntry<>(channelNames.encode(channel), UNDELIVERED_ID);
+            }
+
+            List<Object> result = jedis.xreadGroup(group, consumerName, readParams, keys);
+            if (result == null) {
+                // Nothing arrived during the block time
+                return;
+            }
+
+            for (Object stream : result) {
+                List<?> keyAndEntries = (List<?>) stream;
+                handle(jedis, (byte[]) keyAndEntries.get(0), (List<?>) keyAndEntries.get(1));
+            }
+        }
+
+        /**
+         * Takes over the entries other consumers of the group did not acknowledge in time
+         */
+        private void claim(Jedis jedis) {
+            for (String channel : ready) {
+                byte[] key = channelNames.encode(channel);
+                byte[] start = CLAIM_START_ID;
+                do {
+                    List<Object> result = jedis.xautoclaim(key, group, consumerName, config.getStreamClaimIdle(),
+                            start, claimParams);
+                    start = (byte[]) result.get(0);
+                    handle(jedis, key, (List<?>) result.get(1));
+                } while (running && !Arrays.equals(start, CLAIM_START_ID));
+            }
+        }
+
+        /**
+         * Removes the groups of the nodes that did not read the broadcast streams for
+         * {@link RedisConfig#getStreamGroupIdle()}, along with the stream of their channel. The group of a node is
+         * named after its channel.
+         */
+        private void removeIdleGroups(Jedis jedis) {
+            String nodePrefix = config.getChannelBase() + "#";
+
+            for (String channel : ready) {
+                if (channel.equals(config.getChannel())) {
+                    continue;
+                }
+
+                try {
+                    for (StreamGroupInfo group : jedis.xinfoGroups(channel)) {
+                        String node = group.getName();
+                        if (node.equals(config.getChannel()) || !node.startsWith(nodePrefix) ||
+                                !isIdle(jedis, channel, node)) {
+                            continue;
+                        }
+
+                        jedis.xgroupDestroy(channel, node);
+                        if (isIdle(jedis, node, node)) {
+                            jedis.del(node);
+                        }
+                        Logger.info("Removed the stream groups of " + node + ", idle for " +
+                                config.getStreamGroupIdle() + "ms.");
+                    }
+                } catch (JedisDataException e) {
+                    // Removed by another node in the meantime, the other groups are checked on the next cleanup
+                    if (Debugger.isEnabled()) {
+                        //noinspection CallToPrintStackTrace
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return true if every consumer of the group did not read for {@link RedisConfig#getStreamGroupIdle()}, false
+         * if the group does not exist or was not read yet
+         */
+        private boolean isIdle(Jedis jedis, String stream, String group) {
+            List<StreamConsumerInfo> consumers;
+            try {
+                consumers = jedis.xinfoConsumers2(stream, group);
+            } catch (JedisDataException e) {
+                return false;
+            }
+
+            if (consumers.isEmpty()) {
+                return false;
+            }
+            for (StreamConsumerInfo consumer : consumers) {
+                if (consumer.getIdle() < config.getStreamGroupIdle()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void handle(Jedis jedis, byte[] key, List<?> entries) {
+            if (entries.isEmpty()) {
+                return;
+            }
+
+            byte[][] ids = new byte[entries.size()][];
+            int count = 0;
+            for (Object value : entries) {
+                // Entries trimmed from the stream before they were claimed
+                if (value == null) {
+                    continue;
+                }
+
+                List<?> entry = (List<?>) value;
+                ids[count++] = (byte[]) entry.get(0);
+
+                byte[] payload = payload((List<?>) entry.get(1));
+                if (payload != null) {
+                    messageHandler.accept(key, payload);
+                }
+            }
+
+            if (count != 0) {
+                jedis.xack(key, group, count == ids.length ? ids : Arrays.copyOf(ids, count));
+            }
+        }
+
+        private @Nullable byte[] payload(@Nullable List<?> fields) {
+            if (fields == null) {
+                return null;
+            }
+
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                if (Arrays.equals((byte[]) fields.get(i), PAYLOAD_FIELD)) {
+                    return (byte[]) fields.get(i + 1);
+                }
+            }
+            return null;
+        }
+
+        private void onConnected() {
+            if (state == RedisConnectionSupervisor.State.DISCONNECTED && firstConnection.getCount() == 0) {
+                Logger.good("Reconnected to redis server.");
+            }
+
+            attempt = 0;
+            state = RedisConnectionSupervisor.State.CONNECTED;
+            firstConnection.countDown();
+            if (!shared) {
+                connectedListener.run();
+            }
+        }
+
+        private void onDisconnected() {
+            boolean wasConnected = state == RedisConnectionSupervisor.State.CONNECTED;
+            state = RedisConnectionSupervisor.State.DISCONNECTED;
+
+            if (!wasConnected) {
+                if (attempt == 0) {
+                    Logger.error("Unable to connect to redis server. Retrying...");
+                }
+                return;
+            }
+
+            Logger.error("Lost connection to redis server. Reconnecting...");
+            if (debugger.isEnabled() && lastError != null) {
+                //noinspection CallToPrintStackTrace
+                lastError.printStackTrace();
+            }
+
+            if (!shared) {
+                connectionLostHandler.accept(lastError);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package dev.lightdream.redismanager.transport;
+
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
+import dev.lightdream.redismanager.manager.RedisManager;
+
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Moves the encoded events between the nodes. {@link RedisManager} publishes and subscribes only through this, so the
+ * same codec, correlation and dispatch path runs on top of Redis pub/sub ({@link PubSubTransport}), Redis Streams
+ * ({@link RedisStreamTransport}) or a broker in the same JVM ({@link InMemoryBroker}).
+ */
+public interface RedisTransport extends BatchPublisher {
+
+    /**
+     * Publishes on the calling thread
+     *
+     * @return the number of receivers of the payload
+     */
+    long publish(byte[] channel, byte[] payload);
+
+    /**
+     * Receives the events published on the channel, now if started and after every reconnect
+     */
+    void subscribe(String channel);
+
+    /**
+     * Receives the events published on the channel, sharing them with the other nodes that subscribed the same way,
+     * so each event is received by a single node. Transports that can not share the events receive all of them.
+     */
+    default void subscribeShared(String channel) {
+        subscribe(channel);
+    }
+
+    void unsubscribe(String channel);
+
+    void start();
+
+    /**
+     * Waits until the transport is connected for the first time
+     *
+     * @return true if it connected in time
+     */
+    boolean awaitConnected(long timeout) throws InterruptedException;
+
+    /**
+     * @return the state of the connection the events of this node are received on
+     */
+    RedisConnectionSupervisor.State state();
+
+    /**
+     * @param listener run every time the connection the events of this node are received on is established, the first
+     *                 time included, on the thread that established it
+     */
+    void onConnected(Runnable listener);
+
+    default boolean isConnected() {
+        return state() == RedisConnectionSupervisor.State.CONNECTED;
+    }
+
+    void shutdown();
+
+    @FunctionalInterface
+    interface Factory {
+
+        /**
+         * @param messageHandler        to be called with the channel and the payload of every event received
+         * @param connectionLostHandler to be called once every time the connection the events are received on is lost
+         */
+        RedisTransport create(RedisManager manager, BiConsumer<byte[], byte[]> messageHandler,
+                              Consumer<Throwable> connectionLostHandler);
+
+    }
+}
@@ -0,0 +1,21 @@
+package dev.lightdream.redismanager.transport;
+
+public enum TransportType {
+
+    /**
+     * Redis pub/sub, every node subscribed to a channel receives its events. Events published while a node is not
+     * subscribed are lost for it.
+     */
+    PUB_SUB,
+    /**
+     * Redis Streams, see {@link RedisStreamTransport}. Events are kept in capped streams and the nodes that share a
+     * consumer group share the events of its stream.
+     */
+    STREAMS,
+    /**
+     * The sharded pub/sub of a Redis Cluster, see {@link RedisClusterTransport}. Events only go through the shard that
+     * owns their channel.
+     */
+    CLUSTER
+
+}
@@ -0,0 +1,177 @@
+package dev.lightdream.redismanager.type_adapter;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Forwards the output of the reflective adapter of an event to a writer that already has the object opened and the
+ * className written, dropping the opening of the object and the className property of the event itself.
+ */
+class ClassNameSkippingJsonWriter extends JsonWriter {
+
+    private static final Writer UNWRITABLE_WRITER = new Writer() {
+        @Override
+        public void write(char[] buffer, int offset, int counter) {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void flush() {
+            throw new AssertionError();
+        }
+
+        @Override
+        public void close() {
+            throw new AssertionError();
+        }
+    };
+
+    private final JsonWriter out;
+    private int depth;
+    private boolean skipValue;
+
+    ClassNameSkippingJsonWriter(JsonWriter out) {
+        super(UNWRITABLE_WRITER);
+        this.out = out;
+        setLenient(out.isLenient());
+        setHtmlSafe(out.isHtmlSafe());
+        setSerializeNulls(out.getSerializeNulls());
+    }
+
+    private boolean skip() {
+        if (skipValue) {
+            skipValue = false;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public JsonWriter beginObject() throws IOException {
+        if (depth++ == 0) {
+            return this;
+        }
+        out.beginObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endObject() throws IOException {
+        depth--;
+        out.endObject();
+        return this;
+    }
+
+    @Override
+    public JsonWriter beginArray() throws IOException {
+        depth++;
+        out.beginArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter endArray() throws IOException {
+        depth--;
+        out.endArray();
+        return this;
+    }
+
+    @Override
+    public JsonWriter name(String name) throws IOException {
+        if (depth == 1 && RedisEventTypeAdapter.CLASS_NAME.equals(name)) {
+            skipValue = true;
+            return this;
+        }
+        out.name(name);
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(String value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter jsonValue(String value) throws IOException {
+        if (!skip()) {
+            out.jsonValue(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter nullValue() throws IOException {
+        if (!skip()) {
+            out.nullValue();
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(boolean value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Boolean value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(float value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(double value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(long value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonWriter value(Number value) throws IOException {
+        if (!skip()) {
+            out.value(value);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean isLenient() {
+        return out.isLenient();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        // The underlying writer is owned by the caller
+    }
+}
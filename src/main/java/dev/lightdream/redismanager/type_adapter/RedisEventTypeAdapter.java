@@ -1,76 +1,237 @@
 package dev.lightdream.redismanager.type_adapter;
 
-import com.google.gson.JsonDeserializationContext;
+import com.google.gson.Gson;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonSerializationContext;
-import dev.lightdream.filemanager.GsonSerializer;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dev.lightdream.filemanager.GsonSettings;
 import dev.lightdream.logger.Debugger;
 import dev.lightdream.logger.Logger;
 import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
 
-@SuppressWarnings("rawtypes")
-public class RedisEventTypeAdapter implements GsonSerializer<RedisEvent> {
+/**
+ * Writes {@link RedisEvent}s with the className as the first property, so the receiver can pick the concrete class
+ * after reading a single token and decode the rest of the event in one pass.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class RedisEventTypeAdapter implements TypeAdapterFactory {
 
-    @Override
-    public Class<RedisEvent> getClazz() {
-        return RedisEvent.class;
+    static final String CLASS_NAME = "className";
+    private static final String CLASS_NAME_PREFIX = "{\"" + CLASS_NAME + "\":\"";
+
+    private static final TypeAdapter<RedisEvent> MISSING = new TypeAdapter<RedisEvent>() {
+        @Override
+        public void write(JsonWriter out, RedisEvent value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RedisEvent read(JsonReader in) {
+            throw new UnsupportedOperationException();
+        }
+    };
+
+    private final Gson gson;
+    private final ResponseEventTypeAdapter responseEventAdapter;
+    // Class name -> event class, Object.class if the class does not exist or is not a RedisEvent
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+    // Class name -> reflective adapter of that class, MISSING if the class does not exist or is not a RedisEvent
+    private final Map<String, TypeAdapter<RedisEvent>> adapters = new ConcurrentHashMap<>();
+
+    /**
+     * @param responseTypes see {@link ResponseEventTypeAdapter#ResponseEventTypeAdapter(Gson, LongFunction)}
+     */
+    public RedisEventTypeAdapter(GsonSettings gsonSettings, LongFunction<Type> responseTypes) {
+        this.gson = gsonSettings.gson().newBuilder()
+                .registerTypeAdapterFactory(this)
+                .create();
+        this.responseEventAdapter = new ResponseEventTypeAdapter(gson, responseTypes);
+    }
+
+    /**
+     * @return the gson instance that has this adapter registered
+     */
+    public Gson gson() {
+        return gson;
+    }
+
+    public ResponseEventTypeAdapter responseEventAdapter() {
+        return responseEventAdapter;
     }
 
     @Override
-    public RedisEvent deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) {
-        try {
-            boolean __RedisEventTypeAdapter = json.getAsJsonObject().has("__RedisEventTypeAdapter#deserialize");
-            String className = json.getAsJsonObject().get("className").getAsString();
-
-            if (!__RedisEventTypeAdapter && !className.equals(RedisEvent.class.getName())) {
-                Class<? extends RedisEvent<?>> clazz;
-
-                try {
-                    //noinspection unchecked
-                    clazz = (Class<? extends RedisEvent<?>>) Class.forName(className);
-                } catch (Throwable e) {
-                    Logger.error("Class " + className + " was not found in the current JVM context. Please make sure" +
-                            "the exact class exists in the project. If you want to have different classes in the sender and " +
-                            "receiver override RedisEvent#getClassName and specify the class name there.");
-                    if (Debugger.isEnabled()) {
-                        //noinspection CallToPrintStackTrace
-                        e.printStackTrace();
-                    }
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (!RedisEvent.class.isAssignableFrom(type.getRawType())) {
+            return null;
+        }
+        if (type.getRawType() == ResponseEvent.class) {
+            return (TypeAdapter<T>) responseEventAdapter;
+        }
+
+        boolean polymorphic = type.getRawType() == RedisEvent.class;
+        TypeAdapter<RedisEvent> delegate = (TypeAdapter<RedisEvent>) gson.getDelegateAdapter(this, type);
+
+        return (TypeAdapter<T>) new TypeAdapter<RedisEvent>() {
+            @Override
+            public void write(JsonWriter out, RedisEvent value) throws IOException {
+                if (value == null) {
+                    out.nullValue();
+                    return;
+                }
+                if (value.getClass() == ResponseEvent.class) {
+                    responseEventAdapter.write(out, (ResponseEvent) value);
+                    return;
+                }
+
+                TypeAdapter<RedisEvent> adapter = value.getClass() == type.getRawType() ? delegate :
+                        (TypeAdapter<RedisEvent>) gson.getDelegateAdapter(RedisEventTypeAdapter.this,
+                                TypeToken.get(value.getClass()));
+
+                out.beginObject();
+                out.name(CLASS_NAME).value(value.getClassName());
+                adapter.write(new ClassNameSkippingJsonWriter(out), value);
+            }
+
+            @Override
+            public RedisEvent read(JsonReader in) throws IOException {
+                if (!polymorphic) {
+                    return delegate.read(in);
+                }
+
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
                     return null;
                 }
 
-                JsonObject object = json.getAsJsonObject();
-                object.addProperty("__RedisEventTypeAdapter#deserialize", true);
-                return context.deserialize(json, clazz);
+                // The concrete class is only known after reading the className, that can be anywhere in the object
+                JsonElement json = JsonParser.parseReader(in);
+                TypeAdapter<RedisEvent> adapter = getAdapter(json.getAsJsonObject().get(CLASS_NAME).getAsString());
+                return adapter == null ? null : adapter.fromJsonTree(json);
+            }
+        };
+    }
+
+    /**
+     * Decodes an event that was serialized with {@link RedisEvent#serialize()}
+     *
+     * @return the event or null if it could not be decoded
+     */
+    public @Nullable RedisEvent<?> deserialize(String json) {
+        try {
+            String className = peekClassName(json);
+            if (className == null) {
+                Logger.error("RedisEvent has no className property");
+                Logger.error(json);
+                return null;
             }
 
-            long id = json.getAsJsonObject().get("id").getAsLong();
-            String originator = json.getAsJsonObject().get("originator").getAsString();
-            String redisTarget = json.getAsJsonObject().get("redisTarget").getAsString();
+            TypeAdapter<RedisEvent> adapter = getAdapter(className);
+            if (adapter == null) {
+                return null;
+            }
 
-            return new RedisEvent(className, id, originator, redisTarget);
+            return adapter.fromJson(json);
         } catch (Exception e) {
             Logger.error("Error while deserializing RedisEvent");
             Logger.error("Json:");
-            Logger.error(json.toString());
+            Logger.error(json);
             //noinspection CallToPrintStackTrace
             e.printStackTrace();
             return null;
         }
     }
 
-    @Override
-    public JsonElement serialize(RedisEvent src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject object = new JsonObject();
+    /**
+     * @return the className of the event. Reads it straight from the string when it is the first property, as
+     * written by this adapter. Events written by other serializers are scanned without being decoded.
+     */
+    private @Nullable String peekClassName(String json) throws IOException {
+        if (json.startsWith(CLASS_NAME_PREFIX)) {
+            int end = json.indexOf('"', CLASS_NAME_PREFIX.length());
+            // Class names can not contain quotes or escapes, so the first quote closes the value
+            if (end != -1 && json.lastIndexOf('\\', end) < CLASS_NAME_PREFIX.length()) {
+                return json.substring(CLASS_NAME_PREFIX.length(), end);
+            }
+        }
+
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals(CLASS_NAME)) {
+                return reader.nextString();
+            }
+            reader.skipValue();
+        }
+        return null;
+    }
+
+    private @Nullable TypeAdapter<RedisEvent> getAdapter(String className) {
+        TypeAdapter<RedisEvent> adapter = adapters.get(className);
+        if (adapter == null) {
+            adapter = adapters.computeIfAbsent(className, this::resolveAdapter);
+        }
+
+        if (adapter == MISSING) {
+            Logger.error("Class " + className + " was not found in the current JVM context. Please make sure" +
+                    "the exact class exists in the project. If you want to have different classes in the sender and " +
+                    "receiver override RedisEvent#getClassName and specify the class name there.");
+            return null;
+        }
 
-        object.addProperty("className", src.getClassName());
-        object.addProperty("id", src.getId());
-        object.addProperty("originator", src.getOriginator());
-        object.addProperty("redisTarget", src.getRedisTarget());
+        return adapter;
+    }
+
+    private TypeAdapter<RedisEvent> resolveAdapter(String className) {
+        Class<? extends RedisEvent> clazz = getEventClass(className);
+        if (clazz == null) {
+            return MISSING;
+        }
+        if (clazz == ResponseEvent.class) {
+            return (TypeAdapter) responseEventAdapter;
+        }
+
+        return (TypeAdapter<RedisEvent>) gson.getDelegateAdapter(this, TypeToken.get(clazz));
+    }
+
+    /**
+     * @return the event class with the given name or null if it does not exist or is not a RedisEvent. Both results
+     * are cached.
+     */
+    public @Nullable Class<? extends RedisEvent> getEventClass(String className) {
+        Class<?> clazz = classes.get(className);
+        if (clazz == null) {
+            clazz = classes.computeIfAbsent(className, this::resolveClass);
+        }
+
+        return clazz == Object.class ? null : (Class<? extends RedisEvent>) clazz;
+    }
+
+    private Class<?> resolveClass(String className) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(className);
+        } catch (Throwable e) {
+            if (Debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+            return Object.class;
+        }
 
-        return object;
+        return RedisEvent.class.isAssignableFrom(clazz) ? clazz : Object.class;
     }
 }
@@ -0,0 +1,120 @@
+package dev.lightdream.redismanager.type_adapter;
+
+import com.google.gson.reflect.TypeToken;
+import dev.lightdream.redismanager.event.RedisEvent;
+
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class RedisEventTypes {
+
+    // Event class -> resolved T of RedisEvent<T>
+    private static final Map<Class<?>, Type> responseTypes = new ConcurrentHashMap<>();
+
+    private RedisEventTypes() {
+    }
+
+    /**
+     * Resolves the type parameter of {@link RedisEvent} for the given event class, following the whole class
+     * hierarchy so events like {@code class PlayersEvent extends ListEvent<Player>} resolve to {@code List<Player>}.
+     * The result is cached per class.
+     *
+     * @return the response type of the event or Object.class if it can not be resolved (raw or generic event classes)
+     */
+    public static Type getResponseType(Class<?> eventClass) {
+        Type type = responseTypes.get(eventClass);
+        if (type == null) {
+            type = responseTypes.computeIfAbsent(eventClass, RedisEventTypes::resolveResponseType);
+        }
+        return type;
+    }
+
+    private static Type resolveResponseType(Class<?> eventClass) {
+        Map<TypeVariable<?>, Type> bindings = new HashMap<>();
+
+        Class<?> clazz = eventClass;
+        while (clazz != RedisEvent.class) {
+            if (clazz == null) {
+                return Object.class;
+            }
+
+            Class<?> superClass = clazz.getSuperclass();
+            Type superType = clazz.getGenericSuperclass();
+            if (superType instanceof ParameterizedType) {
+                Type[] arguments = ((ParameterizedType) superType).getActualTypeArguments();
+                TypeVariable<?>[] variables = superClass.getTypeParameters();
+                for (int i = 0; i < variables.length; i++) {
+                    bindings.put(variables[i], substitute(arguments[i], bindings));
+                }
+            }
+            clazz = superClass;
+        }
+
+        Type type = bindings.get(RedisEvent.class.getTypeParameters()[0]);
+        return type == null || hasVariables(type) ? Object.class : type;
+    }
+
+    private static Type substitute(Type type, Map<TypeVariable<?>, Type> bindings) {
+        if (type instanceof TypeVariable) {
+            Type bound = bindings.get(type);
+            return bound == null ? type : bound;
+        }
+
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Type[] arguments = parameterizedType.getActualTypeArguments().clone();
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = substitute(arguments[i], bindings);
+            }
+            return TypeToken.getParameterized(parameterizedType.getRawType(), arguments).getType();
+        }
+
+        if (type instanceof GenericArrayType) {
+            Type component = substitute(((GenericArrayType) type).getGenericComponentType(), bindings);
+            return TypeToken.getArray(component).getType();
+        }
+
+        return type;
+    }
+
+    private static boolean hasVariables(Type type) {
+        if (type instanceof TypeVariable) {
+            return true;
+        }
+
+        if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                if (hasVariables(argument)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (type instanceof GenericArrayType) {
+            return hasVariables(((GenericArrayType) type).getGenericComponentType());
+        }
+
+        if (type instanceof WildcardType) {
+            WildcardType wildcardType = (WildcardType) type;
+            for (Type bound : wildcardType.getUpperBounds()) {
+                if (hasVariables(bound)) {
+                    return true;
+                }
+            }
+            for (Type bound : wildcardType.getLowerBounds()) {
+                if (hasVariables(bound)) {
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,188 @@
+package dev.lightdream.redismanager.type_adapter;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dev.lightdream.logger.Debugger;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+/**
+ * Writes the response of a {@link ResponseEvent} inline, as a regular JSON value, and reads it back in the same pass
+ * as the rest of the event. The id is written before the response, so the type of the response is known by the time
+ * the value is reached.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class ResponseEventTypeAdapter extends TypeAdapter<ResponseEvent> {
+
+    private static final String ID = "id";
+    private static final String ORIGINATOR = "originator";
+    private static final String REDIS_TARGET = "redisTarget";
+    private static final String RESPONSE_CLASS_NAME = "responseClassName";
+    private static final String RESPONSE = "response";
+
+    private final Gson gson;
+    private final LongFunction<Type> responseTypes;
+    // Class name -> class, Object.class if the class does not exist
+    private final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * @param responseTypes returns the type of the response that is awaited for the given request id or null if no
+     *                      response is awaited, in which case the response is skipped
+     */
+    public ResponseEventTypeAdapter(Gson gson, LongFunction<Type> responseTypes) {
+        this.gson = gson;
+        this.responseTypes = responseTypes;
+    }
+
+    @Override
+    public void write(JsonWriter out, ResponseEvent value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name(RedisEventTypeAdapter.CLASS_NAME).value(value.getClassName());
+        out.name(ID).value(value.getId());
+        out.name(ORIGINATOR).value(value.getOriginator());
+        out.name(REDIS_TARGET).value(value.getRedisTarget());
+        writeResponse(out, value);
+        out.endObject();
+    }
+
+    /**
+     * Writes only the response properties, for codecs that carry the fields of the event separately
+     */
+    public void writeBody(JsonWriter out, ResponseEvent value) throws IOException {
+        out.beginObject();
+        writeResponse(out, value);
+        out.endObject();
+    }
+
+    private void writeResponse(JsonWriter out, ResponseEvent value) throws IOException {
+        if (value.getResponseClassName() != null) {
+            out.name(RESPONSE_CLASS_NAME).value(value.getResponseClassName());
+        }
+
+        out.name(RESPONSE);
+        Object response = value.getResponse();
+        if (response == null) {
+            // Written even if the gson instance does not serialize nulls
+            boolean serializeNulls = out.getSerializeNulls();
+            out.setSerializeNulls(true);
+            out.nullValue();
+            out.setSerializeNulls(serializeNulls);
+            return;
+        }
+
+        Type type = value.getResponseType() == null ? response.getClass() : value.getResponseType();
+        ((TypeAdapter) gson.getAdapter(TypeToken.get(type))).write(out, response);
+    }
+
+    @Override
+    public ResponseEvent read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return read(in, -1, "UNKNOWN", "*");
+    }
+
+    /**
+     * Reads an event written by {@link #write(JsonWriter, ResponseEvent)} or {@link #writeBody(JsonWriter,
+     * ResponseEvent)}. The properties present in the JSON take precedence over the given ones.
+     */
+    public ResponseEvent read(JsonReader in, long id, String originator, String redisTarget) throws IOException {
+        String responseClassName = null;
+        Object response = null;
+        // Only used if the response comes before the id, for JSON not written by this adapter
+        JsonElement unresolvedResponse = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case ID:
+                    id = in.nextLong();
+                    break;
+                case ORIGINATOR:
+                    originator = in.nextString();
+                    break;
+                case REDIS_TARGET:
+                    redisTarget = in.nextString();
+                    break;
+                case RESPONSE_CLASS_NAME:
+                    responseClassName = in.nextString();
+                    break;
+                case RESPONSE:
+                    if (id == -1 && responseClassName == null) {
+                        unresolvedResponse = JsonParser.parseReader(in);
+                        break;
+                    }
+                    response = readResponse(in, getResponseType(id, responseClassName));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (unresolvedResponse != null) {
+            Type type = getResponseType(id, responseClassName);
+            response = type == null ? null : gson.getAdapter(TypeToken.get(type)).fromJsonTree(unresolvedResponse);
+        }
+
+        return new ResponseEvent(id, originator, redisTarget, responseClassName, response);
+    }
+
+    private @Nullable Object readResponse(JsonReader in, @Nullable Type type) throws IOException {
+        if (type == null) {
+            // Nobody is waiting for this response anymore
+            in.skipValue();
+            return null;
+        }
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return gson.getAdapter(TypeToken.get(type)).read(in);
+    }
+
+    private @Nullable Type getResponseType(long id, @Nullable String responseClassName) {
+        Type awaitedType = responseTypes.apply(id);
+        if (awaitedType == null || responseClassName == null) {
+            return awaitedType;
+        }
+
+        Class<?> clazz = classes.get(responseClassName);
+        if (clazz == null) {
+            clazz = classes.computeIfAbsent(responseClassName, this::resolveClass);
+        }
+        return clazz == Object.class ? awaitedType : clazz;
+    }
+
+    private Class<?> resolveClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (Throwable e) {
+            if (Debugger.isEnabled()) {
+                //noinspection CallToPrintStackTrace
+                e.printStackTrace();
+            }
+            return Object.class;
+        }
+    }
+}
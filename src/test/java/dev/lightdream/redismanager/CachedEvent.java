@@ -0,0 +1,26 @@
+package dev.lightdream.redismanager;
+
+import dev.lightdream.redismanager.annotation.CacheResponse;
+import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.manager.RedisManager;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Getter
+@NoArgsConstructor
+@CacheResponse(ttl = 60000, maxEntries = 2)
+public class CachedEvent extends RedisEvent<Integer> {
+
+    public static final AtomicInteger handled = new AtomicInteger();
+
+    private int value;
+
+    public CachedEvent(int value) {
+        super(RedisManager.instance().redisConfig().getRedisID());
+
+        this.value = value;
+    }
+
+}
@@ -0,0 +1,25 @@
+package dev.lightdream.redismanager;
+
+import dev.lightdream.redismanager.annotation.Coalesce;
+import dev.lightdream.redismanager.event.RedisEvent;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Getter
+@NoArgsConstructor
+@Coalesce
+public class CoalescedEvent extends RedisEvent<Integer> {
+
+    public static final AtomicInteger handled = new AtomicInteger();
+
+    private int value;
+
+    public CoalescedEvent(String redisID, int value) {
+        super(redisID);
+
+        this.value = value;
+    }
+
+}
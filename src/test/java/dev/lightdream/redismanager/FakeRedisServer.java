@@ -0,0 +1,282 @@
+package dev.lightdream.redismanager;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Speaks just enough RESP for a subscriber connection: SUBSCRIBE, UNSUBSCRIBE and PING, their sharded variants and a
+ * CLUSTER SLOTS serving every slot itself, every other command is answered with OK. Lets the tests break and delay
+ * the subscriber connection without a Redis binary.
+ */
+class FakeRedisServer implements AutoCloseable {
+
+    private final ServerSocket server;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+
+    private volatile boolean answerPings = true;
+    private volatile CountDownLatch held = new CountDownLatch(0);
+    private volatile CountDownLatch heldReceived = new CountDownLatch(0);
+
+    FakeRedisServer() throws IOException {
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.thread = new Thread(this::accept, "FakeRedisServer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return the number of connections accepted so far
+     */
+    int connections() {
+        return clients.size();
+    }
+
+    void answerPings(boolean answerPings) {
+        this.answerPings = answerPings;
+    }
+
+    /**
+     * Holds the answer to the next SUBSCRIBE until {@link #releaseSubscriptions()}
+     */
+    void holdSubscriptions() {
+        heldReceived = new CountDownLatch(1);
+        held = new CountDownLatch(1);
+    }
+
+    /**
+     * @return true if a SUBSCRIBE is being held in time
+     */
+    boolean awaitHeldSubscription(long timeout) throws InterruptedException {
+        return heldReceived.await(timeout, TimeUnit.MILLISECONDS);
+    }
+
+    void releaseSubscriptions() {
+        held.countDown();
+    }
+
+    /**
+     * Breaks every open connection
+     */
+    void dropConnections() {
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+
+    /**
+     * @return true if the channel is subscribed on the last connection in time
+     */
+    synchronized boolean awaitSubscribed(String channel, long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        while (!isSubscribed(channel)) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    /**
+     * @return the channels of every open connection subscribed to any
+     */
+    synchronized List<Set<String>> subscriptions() {
+        List<Set<String>> subscriptions = new ArrayList<>();
+        for (Client client : clients) {
+            if (!client.closed && !client.channels.isEmpty()) {
+                subscriptions.add(new LinkedHashSet<>(client.channels));
+            }
+        }
+        return subscriptions;
+    }
+
+    private boolean isSubscribed(String channel) {
+        return !clients.isEmpty() && clients.get(clients.size() - 1).channels.contains(channel);
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        dropConnections();
+        held.countDown();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                Client client = new Client(server.accept());
+                clients.add(client);
+                client.thread.start();
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+        }
+    }
+
+    private class Client {
+
+        private final Socket socket;
+        private final Thread thread;
+        // Guarded by FakeRedisServer.this
+        private final Set<String> channels = new LinkedHashSet<>();
+        private volatile boolean closed;
+
+        private Client(Socket socket) {
+            this.socket = socket;
+            this.thread = new Thread(this::run, "FakeRedisServer-Client");
+            this.thread.setDaemon(true);
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already closed
+            }
+        }
+
+        private void run() {
+            try (InputStream input = new BufferedInputStream(socket.getInputStream());
+                 OutputStream output = socket.getOutputStream()) {
+                List<String> command;
+                while ((command = readCommand(input)) != null) {
+                    handle(command, output);
+                }
+            } catch (IOException | InterruptedException e) {
+                // Dropped
+            }
+            closed = true;
+        }
+
+        private void handle(List<String> command, OutputStream output) throws IOException, InterruptedException {
+            String name = command.get(0).toUpperCase();
+            String kind = name.toLowerCase();
+            List<String> arguments = command.subList(1, command.size());
+
+            switch (name) {
+                case "CLUSTER":
+                    String node = "*2\r\n" + bulk(server.getInetAddress().getHostAddress()) + ":" + port() + "\r\n";
+                    write(output, "*1\r\n*3\r\n:0\r\n:16383\r\n" + node);
+                    break;
+                case "SPUBLISH":
+                    write(output, ":0\r\n");
+                    break;
+                case "SUBSCRIBE":
+                case "SSUBSCRIBE":
+                    heldReceived.countDown();
+                    held.await();
+                    for (String channel : arguments) {
+                        int count;
+                        synchronized (FakeRedisServer.this) {
+                            channels.add(channel);
+                            count = channels.size();
+                            FakeRedisServer.this.notifyAll();
+                        }
+                        write(output, "*3\r\n" + bulk(kind) + bulk(channel) + ":" + count + "\r\n");
+                    }
+                    break;
+                case "UNSUBSCRIBE":
+                case "SUNSUBSCRIBE":
+                    List<String> unsubscribed;
+                    synchronized (FakeRedisServer.this) {
+                        unsubscribed = arguments.isEmpty() ? new ArrayList<>(channels) : arguments;
+                    }
+                    if (unsubscribed.isEmpty()) {
+                        write(output, "*3\r\n" + bulk(kind) + "$-1\r\n:0\r\n");
+                    }
+                    for (String channel : unsubscribed) {
+                        int count;
+                        synchronized (FakeRedisServer.this) {
+                            channels.remove(channel);
+                            count = channels.size();
+                        }
+                        write(output, "*3\r\n" + bulk(kind) + bulk(channel) + ":" + count + "\r\n");
+                    }
+                    break;
+                case "PING":
+                    if (answerPings) {
+                        write(output, "*2\r\n" + bulk("pong") + bulk(""));
+                    }
+                    break;
+                default:
+                    write(output, "+OK\r\n");
+            }
+        }
+
+        private String bulk(String value) {
+            return "$" + value.getBytes(StandardCharsets.ISO_8859_1).length + "\r\n" + value + "\r\n";
+        }
+
+        private void write(OutputStream output, String value) throws IOException {
+            output.write(value.getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+        }
+
+        /**
+         * @return the arguments of the next command, null once the connection is closed
+         */
+        private List<String> readCommand(InputStream input) throws IOException {
+            String header = readLine(input);
+            if (header == null) {
+                return null;
+            }
+
+            int count = Integer.parseInt(header.substring(1));
+            List<String> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String lengthLine = readLine(input);
+                if (lengthLine == null) {
+                    return null;
+                }
+
+                byte[] value = new byte[Integer.parseInt(lengthLine.substring(1))];
+                for (int read = 0; read < value.length; ) {
+                    int n = input.read(value, read, value.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+                // Trailing CRLF
+                input.read();
+                input.read();
+                command.add(new String(value, StandardCharsets.ISO_8859_1));
+            }
+            return command;
+        }
+
+        private String readLine(InputStream input) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = input.read()) != '\n') {
+                if (c < 0) {
+                    return null;
+                }
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+            }
+            return line.toString();
+        }
+    }
+}
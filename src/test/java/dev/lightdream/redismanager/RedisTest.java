@@ -1,32 +1,84 @@
 package dev.lightdream.redismanager;
 
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.JsonAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import dev.lightdream.filemanager.FileManager;
 import dev.lightdream.filemanager.GsonSerializer;
 import dev.lightdream.filemanager.GsonSettings;
 import dev.lightdream.logger.Debugger;
 import dev.lightdream.logger.Printer;
 import dev.lightdream.messagebuilder.MessageBuilderManager;
+import dev.lightdream.redismanager.annotation.CacheResponse;
+import dev.lightdream.redismanager.annotation.RedisEventHandler;
+import dev.lightdream.redismanager.cache.RedisResponseCache;
+import dev.lightdream.redismanager.codec.BinaryRedisCodec;
+import dev.lightdream.redismanager.codec.CompressingRedisCodec;
+import dev.lightdream.redismanager.codec.JsonRedisCodec;
+import dev.lightdream.redismanager.codec.RedisCodec;
+import dev.lightdream.redismanager.codec.RedisEventTypeRegistry;
 import dev.lightdream.redismanager.dto.RedisConfig;
+import dev.lightdream.redismanager.dto.RedisGatherResponse;
+import dev.lightdream.redismanager.dto.RedisResponse;
 import dev.lightdream.redismanager.event.RedisEvent;
+import dev.lightdream.redismanager.event.impl.InvalidateCacheEvent;
+import dev.lightdream.redismanager.event.impl.PingEvent;
+import dev.lightdream.redismanager.event.impl.ResponseEvent;
+import dev.lightdream.redismanager.executor.PartitionedRedisExecutor;
+import dev.lightdream.redismanager.executor.RejectionPolicy;
+import dev.lightdream.redismanager.manager.RedisConnectionSupervisor;
 import dev.lightdream.redismanager.manager.RedisManager;
+import dev.lightdream.redismanager.manager.RedisPublisher;
+import dev.lightdream.redismanager.metrics.EventMetrics;
+import dev.lightdream.redismanager.metrics.LatencyHistogram;
+import dev.lightdream.redismanager.outbox.RedisOutbox;
+import dev.lightdream.redismanager.trace.RedisTracer;
+import dev.lightdream.redismanager.trace.TraceRecord;
+import dev.lightdream.redismanager.transport.InMemoryBroker;
+import dev.lightdream.redismanager.transport.RedisClusterTransport;
+import dev.lightdream.redismanager.transport.RedisStreamTransport;
+import dev.lightdream.redismanager.type_adapter.RedisEventTypes;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.reflections.Reflections;
 import org.reflections.scanners.Scanners;
 import org.reflections.util.ConfigurationBuilder;
+import redis.clients.jedis.exceptions.JedisConnectionException;
 
+import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RedisTest {
 
+    private static Reflections reflections;
+
     @BeforeAll
     public static void init() {
         GsonSettings gsonSettings = new GsonSettings();
 
-        Reflections reflections = new Reflections(
+        reflections = new Reflections(
                 new ConfigurationBuilder()
                         .forPackages("dev.lightdream.redismanager")
                         .setScanners(Scanners.MethodsAnnotated, Scanners.TypesAnnotated, Scanners.SubTypes)
@@ -81,6 +133,238 @@ public class RedisTest {
         assertEquals("test3", result.get(2));
     }
 
+    @Test
+    public void sendAsync() throws Exception {
+        Integer result = new SimpleEvent1(1, 2).sendAsync().get(2, TimeUnit.SECONDS);
+
+        assertEquals(3, result);
+    }
+
+    @Test
+    public void completedResponsesAreEvicted() {
+        SimpleEvent1 event = new SimpleEvent1(1, 2);
+        event.sendAndGet();
+
+        assertFalse(RedisManager.instance().awaitingResponses().containsKey(event.getId()));
+    }
+
+    @Test
+    public void unansweredRequestTimesOut() {
+        PingEvent event = new PingEvent(RedisManager.instance().redisConfig().getRedisID());
+        RedisResponse<Boolean> response = event.sendAndWait(100);
+
+        assertTrue(response.hasTimeout());
+        assertFalse(RedisManager.instance().awaitingResponses().containsKey(event.getId()));
+    }
+
+    @Test
+    public void metrics() {
+        EventMetrics metrics = RedisManager.instance().metrics().event(SimpleEvent1.class);
+        long sent = metrics.getSent();
+        long roundTrips = metrics.getRoundTrips();
+
+        new SimpleEvent1(1, 2).sendAndGet();
+
+        assertEquals(sent + 1, metrics.getSent());
+        assertEquals(roundTrips + 1, metrics.getRoundTrips());
+        assertTrue(metrics.getHandled() > 0);
+        assertEquals(0, RedisManager.instance().metrics().getPendingResponses());
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), snapshot.max());
+        // Buckets are 1/16 of their value wide
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(500), snapshot.percentile(50), 500_000 / 16.0);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(990), snapshot.percentile(99), 990_000 / 16.0);
+    }
+
+    @Test
+    public void tracer() {
+        RedisConfig config = new RedisConfig();
+        config.setTrace(true);
+        config.setTraceBufferSize(5);
+        config.setTracePayloads(true);
+        config.setTraceEvents(Collections.singletonList(SimpleEvent1.class.getName()));
+        RedisTracer tracer = new RedisTracer(config, data -> new String(data, StandardCharsets.UTF_8));
+
+        for (int i = 0; i < 10; i++) {
+            tracer.send(SimpleEvent1.class.getName(), "channel", i, String.valueOf(i).getBytes(StandardCharsets.UTF_8));
+            tracer.dispatch(SimpleEvent2.class.getName(), "channel", i, 1000);
+        }
+
+        // Rounded up to 8 entries, the oldest are overwritten and the other events are filtered out
+        List<TraceRecord> records = tracer.snapshot();
+        assertEquals(8, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            TraceRecord record = records.get(i);
+            assertEquals(TraceRecord.Type.SEND, record.getType());
+            assertEquals(i + 2, record.getId());
+            assertEquals(String.valueOf(i + 2), record.getPayload());
+        }
+        assertNotNull(tracer.dumpAtMostEvery(1, TimeUnit.MINUTES));
+        assertNull(tracer.dumpAtMostEvery(1, TimeUnit.MINUTES));
+
+        config.setTraceEvents(new ArrayList<>());
+        config.setTraceSampleRate(4);
+        tracer = new RedisTracer(config, data -> "");
+        int traced = 0;
+        for (int id = 0; id < 10000; id++) {
+            if (tracer.isTraced(SimpleEvent1.class.getName(), "channel", id)) {
+                traced++;
+            }
+        }
+        assertEquals(2500, traced, 250);
+    }
+
+    @Test
+    public void tracerNeverReturnsMixedRecords() throws InterruptedException {
+        RedisConfig config = new RedisConfig();
+        config.setTrace(true);
+        config.setTraceBufferSize(4);
+        RedisTracer tracer = new RedisTracer(config, data -> "");
+
+        byte[][] payloads = new byte[50][];
+        String[] channels = new String[1000];
+        for (int i = 0; i < payloads.length; i++) {
+            payloads[i] = new byte[i];
+        }
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = "channel-" + i;
+        }
+
+        // Writers lap the small buffer all the time, every record must still hold the fields of a single record
+        List<Thread> writers = new ArrayList<>();
+        for (int writer = 0; writer < 4; writer++) {
+            Thread thread = new Thread(() -> {
+                for (int id = 0; id < 200000; id++) {
+                    tracer.send("event", channels[id % channels.length], id, payloads[id % payloads.length]);
+                }
+            });
+            thread.start();
+            writers.add(thread);
+        }
+
+        int checked = 0;
+        while (writers.stream().anyMatch(Thread::isAlive)) {
+            for (TraceRecord record : tracer.snapshot()) {
+                assertEquals(channels[(int) (record.getId() % channels.length)], record.getChannel());
+                assertEquals(record.getId() % payloads.length, record.getSize());
+                checked++;
+            }
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void cachedResponses() {
+        EventMetrics metrics = RedisManager.instance().metrics().event(CachedEvent.class);
+        int handled = CachedEvent.handled.get();
+        long hits = metrics.getCacheHits();
+
+        assertEquals(2, new CachedEvent(1).sendAndGet());
+        assertEquals(2, new CachedEvent(1).sendAndGet());
+        assertEquals(handled + 1, CachedEvent.handled.get());
+        assertEquals(hits + 1, metrics.getCacheHits());
+
+        // 2 entries at most, 1 is the least recently used
+        assertEquals(4, new CachedEvent(2).sendAndGet());
+        assertEquals(6, new CachedEvent(3).sendAndGet());
+        assertEquals(2, new CachedEvent(1).sendAndGet());
+        assertEquals(handled + 4, CachedEvent.handled.get());
+
+        RedisManager.instance().invalidateCache(new CachedEvent(3));
+        assertEquals(6, new CachedEvent(3).sendAndGet());
+        assertEquals(handled + 5, CachedEvent.handled.get());
+    }
+
+    @Test
+    public void cachedResponsesAreCopies() {
+        List<String> first = new CachedListEvent().sendAndGet();
+        first.add("changed");
+
+        // A hit, with its own copy
+        List<String> second = new CachedListEvent().sendAndGet();
+        assertEquals(Arrays.asList("a", "b"), second);
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void renamedEventsAreInvalidated() {
+        RedisResponseCache cache = new RedisResponseCache();
+        Gson gson = RedisManager.instance().gson();
+        RedisResponseCache.Region region = cache.region(RenamedCachedEvent.class);
+        assertNotNull(region);
+
+        RenamedCachedEvent request = new RenamedCachedEvent();
+        String key = RedisResponseCache.key(request, gson);
+        region.put(key, 1, Integer.class, gson, region.generation());
+        assertNotNull(region.get(key));
+
+        // As received from another node
+        InvalidateCacheEvent invalidation = new InvalidateCacheEvent(request);
+        cache.invalidate(invalidation.getEventClass(), invalidation.getKey());
+        assertNull(region.get(key));
+    }
+
+    @Test
+    public void handlersMatchSuperclassesInOrder() {
+        List<String> calls = new ArrayList<>();
+        Object listener = new Object() {
+            @RedisEventHandler(order = 2)
+            public void onAnyEvent(RedisEvent<?> event) {
+                calls.add("any");
+            }
+
+            @RedisEventHandler(order = 1)
+            public void onSimpleEvent1(SimpleEvent1 event) {
+                calls.add("simple");
+            }
+        };
+
+        RedisManager.instance().redisEventManager().register(listener);
+        new SimpleEvent2(Arrays.asList("a", "b"), "-").fireEvent();
+        new SimpleEvent1(1, 2).fireEvent();
+        RedisManager.instance().redisEventManager().unregister(listener);
+        new SimpleEvent1(1, 2).fireEvent();
+
+        assertEquals(Arrays.asList("any", "simple", "any"), calls);
+    }
+
+    @Test
+    public void partitionedEventsKeepTheirOrder() throws InterruptedException {
+        PartitionedRedisExecutor executor = new PartitionedRedisExecutor(4, 16);
+        List<Integer> first = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> second = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(200);
+
+        for (int i = 0; i < 100; i++) {
+            int value = i;
+            executor.execute("first", () -> {
+                first.add(value);
+                latch.countDown();
+            });
+            executor.execute("second", () -> {
+                second.add(value);
+                latch.countDown();
+            });
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, first.get(i));
+            assertEquals(i, second.get(i));
+        }
+    }
+
     @Test
     public void testGsonImplementation1() {
         RedisEvent<Boolean> event = new RedisEvent<>("test");
@@ -122,4 +406,682 @@ public class RedisTest {
         assertEquals(event.getB(), event3.getB());
     }
 
+    @Test
+    public void testGsonImplementation3() {
+        ComplexEvent1 event = new ComplexEvent1(Arrays.asList("test1", "test2"), "test3");
+        String json = event.serialize();
+
+        assertTrue(json.startsWith("{\"className\":\"" + ComplexEvent1.class.getName() + "\""));
+        assertEquals(json.indexOf("\"className\""), json.lastIndexOf("\"className\""));
+
+        // Layout written by the previous adapter, with the className after the fields of the subclass
+        String legacyJson = "{\"a\":[\"test1\",\"test2\"],\"b\":\"test3\",\"className\":\"" +
+                ComplexEvent1.class.getName() + "\",\"id\":100,\"originator\":\"test_env\",\"redisTarget\":\"channel#test\"}";
+        RedisEvent<?> legacyEvent = RedisEvent.deserialize(legacyJson);
+
+        assertTrue(legacyEvent instanceof ComplexEvent1);
+        assertEquals(event.getA(), ((ComplexEvent1) legacyEvent).getA());
+        assertEquals(100, legacyEvent.getId());
+
+        assertNull(RedisEvent.deserialize("{\"className\":\"dev.lightdream.redismanager.MissingEvent\",\"id\":1}"));
+    }
+
+    @Test
+    public void binaryCodec() {
+        BinaryRedisCodec codec = new BinaryRedisCodec(new RedisEventTypeRegistry().register(16, ComplexEvent1.class));
+        codec.init(RedisManager.instance());
+
+        ComplexEvent1 event = new ComplexEvent1(Arrays.asList("test1", "test2"), "test3");
+        event.setId(100);
+        event.setOriginator("test_env#origin");
+
+        byte[] data = codec.encode(event);
+        assertTrue(data.length < event.serialize().getBytes(StandardCharsets.UTF_8).length);
+
+        RedisEvent<?> decoded = codec.decode(data);
+        assertTrue(decoded instanceof ComplexEvent1);
+        assertEquals(event.getClassName(), decoded.getClassName());
+        assertEquals(event.getId(), decoded.getId());
+        assertEquals(event.getOriginator(), decoded.getOriginator());
+        assertEquals(event.getRedisTarget(), decoded.getRedisTarget());
+        assertEquals(event.getA(), ((ComplexEvent1) decoded).getA());
+        assertEquals(event.getB(), ((ComplexEvent1) decoded).getB());
+
+        // Not registered, sent with its class name
+        SimpleEvent1 simpleEvent = new SimpleEvent1(1, 2);
+        RedisEvent<?> decodedSimpleEvent = codec.decode(codec.encode(simpleEvent));
+        assertTrue(decodedSimpleEvent instanceof SimpleEvent1);
+        assertEquals(2, ((SimpleEvent1) decodedSimpleEvent).getB());
+
+        // JSON payloads from nodes still using the default codec
+        RedisEvent<?> decodedJson = codec.decode(event.serialize().getBytes(StandardCharsets.UTF_8));
+        assertTrue(decodedJson instanceof ComplexEvent1);
+    }
+
+    @Test
+    public void publisherBackpressure() throws InterruptedException {
+        CountDownLatch connected = new CountDownLatch(1);
+        RedisPublisher publisher = new RedisPublisher((channels, payloads, count) -> {
+            try {
+                connected.await();
+            } catch (InterruptedException ignored) {
+            }
+            throw new JedisConnectionException("Offline");
+        }, 1, 2, 16, 0, RejectionPolicy.ABORT);
+
+        byte[] channel = "channel".getBytes(StandardCharsets.UTF_8);
+        byte[] payload = "payload".getBytes(StandardCharsets.UTF_8);
+
+        // Taken by the publisher thread, that waits for a connection
+        CompletableFuture<Long> first = publisher.publish(channel, payload);
+        while (publisher.queueSize() != 0) {
+            Thread.sleep(1);
+        }
+
+        CompletableFuture<Long> second = publisher.publish(channel, payload);
+        CompletableFuture<Long> third = publisher.publish(channel, payload);
+        CompletableFuture<Long> rejected = publisher.publish(channel, payload);
+        assertEquals(2, publisher.queueSize());
+
+        ExecutionException rejection = assertThrows(ExecutionException.class, rejected::get);
+        assertTrue(rejection.getCause() instanceof RejectedExecutionException);
+
+        connected.countDown();
+        for (CompletableFuture<Long> future : Arrays.asList(first, second, third)) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(2, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof JedisConnectionException);
+        }
+
+        publisher.shutdown();
+    }
+
+    @Test
+    public void supervisorRetriesUnreachableServer() throws InterruptedException {
+        RedisConfig config = new RedisConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(1); // Nothing listens on it
+        config.setConnectTimeout(100);
+        config.setReconnectBaseDelay(10);
+        config.setReconnectMaxDelay(20);
+
+        RedisManager manager = RedisManager.instance();
+        RedisConnectionSupervisor supervisor = new RedisConnectionSupervisor(config, manager.debugger(),
+                manager.channelNames(), (channel, message) -> {
+        }, cause -> fail("Was never connected"));
+        supervisor.subscribe(config.getChannel());
+        supervisor.start();
+
+        assertFalse(supervisor.awaitConnected(200));
+        assertEquals(RedisConnectionSupervisor.State.DISCONNECTED, supervisor.state());
+        assertNotNull(supervisor.lastError());
+
+        supervisor.shutdown();
+        assertEquals(RedisConnectionSupervisor.State.STOPPED, supervisor.state());
+    }
+
+    @Test
+    public void supervisorSubscribesChannelsAddedWhileReconnecting() throws Exception {
+        try (FakeRedisServer server = new FakeRedisServer()) {
+            RedisConfig config = fakeServerConfig(server);
+            RedisManager manager = RedisManager.instance();
+            RedisConnectionSupervisor supervisor = new RedisConnectionSupervisor(config, manager.debugger(),
+                    manager.channelNames(), (channel, message) -> {
+            }, cause -> {
+            });
+            supervisor.subscribe(config.getChannel());
+            supervisor.start();
+            assertTrue(supervisor.awaitConnected(1000));
+
+            // The reconnect has sent its SUBSCRIBE but the server did not confirm it yet
+            server.holdSubscriptions();
+            server.dropConnections();
+            assertTrue(server.awaitHeldSubscription(1000));
+            supervisor.subscribe("late");
+            server.releaseSubscriptions();
+
+            assertTrue(server.awaitSubscribed("late", 1000));
+            assertTrue(server.awaitSubscribed(config.getChannel(), 1000));
+
+            supervisor.shutdown();
+        }
+    }
+
+    @Test
+    public void supervisorDropsUnansweredHeartbeats() throws Exception {
+        try (FakeRedisServer server = new FakeRedisServer()) {
+            RedisConfig config = fakeServerConfig(server);
+            config.setHeartbeatInterval(20);
+            RedisManager manager = RedisManager.instance();
+            RedisConnectionSupervisor supervisor = new RedisConnectionSupervisor(config, manager.debugger(),
+                    manager.channelNames(), (channel, message) -> {
+            }, cause -> {
+            });
+            supervisor.subscribe(config.getChannel());
+            supervisor.start();
+            assertTrue(supervisor.awaitConnected(1000));
+
+            server.answerPings(false);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (supervisor.reconnects() == 0 && System.currentTimeMillis() < deadline) {
+                //noinspection BusyWait
+                Thread.sleep(10);
+            }
+            assertTrue(server.connections() >= 2);
+            assertTrue(supervisor.reconnects() >= 1);
+
+            supervisor.shutdown();
+        }
+    }
+
+    private static RedisConfig fakeServerConfig(FakeRedisServer server) {
+        RedisConfig config = new RedisConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(server.port());
+        config.setConnectTimeout(1000);
+        config.setReconnectBaseDelay(10);
+        config.setReconnectMaxDelay(20);
+        return config;
+    }
+
+    @Test
+    public void streamTransportRetriesUnreachableServer() throws InterruptedException {
+        RedisConfig config = new RedisConfig();
+        config.setHost("127.0.0.1");
+        config.setPort(1); // Nothing listens on it
+        config.setConnectTimeout(100);
+        config.setReconnectBaseDelay(10);
+        config.setReconnectMaxDelay(20);
+
+        RedisManager manager = RedisManager.instance();
+        RedisStreamTransport transport = new RedisStreamTransport(config, manager.debugger(), manager.channelNames(),
+                () -> {
+                    throw new JedisConnectionException("Offline");
+                }, (channel, message) -> {
+        }, cause -> fail("Was never connected"));
+        transport.subscribe(config.getChannel());
+        transport.subscribeShared(config.getChannelBase() + "#service");
+        transport.start();
+
+        assertFalse(transport.awaitConnected(200));
+        assertEquals(RedisConnectionSupervisor.State.DISCONNECTED, transport.state());
+        assertNotNull(transport.lastError());
+
+        transport.shutdown();
+        assertEquals(RedisConnectionSupervisor.State.STOPPED, transport.state());
+    }
+
+    @Test
+    public void clusterTransportRetriesUnreachableCluster() throws InterruptedException {
+        RedisConfig config = new RedisConfig();
+        config.setClusterNodes(Arrays.asList("127.0.0.1:1", "127.0.0.1:2")); // Nothing listens on them
+        config.setConnectTimeout(100);
+        config.setReconnectBaseDelay(10);
+        config.setReconnectMaxDelay(20);
+
+        RedisManager manager = RedisManager.instance();
+        RedisClusterTransport transport = new RedisClusterTransport(config, manager.debugger(),
+                manager.channelNames(), (channel, message) -> {
+        }, cause -> fail("Was never connected"));
+        transport.subscribe(config.getChannel());
+        transport.subscribe(config.getChannelBase() + "#*");
+        transport.start();
+
+        assertFalse(transport.awaitConnected(200));
+        assertEquals(RedisConnectionSupervisor.State.DISCONNECTED, transport.state());
+        assertNotNull(transport.lastError());
+        // Lets the outbox take over, like with a single server
+        assertThrows(JedisConnectionException.class, () -> transport.publish(
+                config.getChannel().getBytes(StandardCharsets.UTF_8), new byte[1]));
+
+        transport.shutdown();
+        assertEquals(RedisConnectionSupervisor.State.STOPPED, transport.state());
+    }
+
+    @Test
+    public void clusterTransportSharesOneConnectionPerShard() throws Exception {
+        try (FakeRedisServer server = new FakeRedisServer()) {
+            RedisConfig config = fakeServerConfig(server);
+            config.setHeartbeatInterval(60000);
+            RedisManager manager = RedisManager.instance();
+            RedisClusterTransport transport = new RedisClusterTransport(config, manager.debugger(),
+                    manager.channelNames(), (channel, message) -> {
+            }, cause -> {
+            });
+            List<String> channels = new ArrayList<>();
+            channels.add(config.getChannel());
+            for (int i = 0; i < 20; i++) {
+                channels.add(config.getChannelBase() + "#event" + i);
+            }
+            channels.forEach(transport::subscribe);
+            transport.start();
+            assertTrue(transport.awaitConnected(2000));
+
+            long deadline = System.currentTimeMillis() + 2000;
+            while (server.subscriptions().isEmpty() || server.subscriptions().get(0).size() < channels.size()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                //noinspection BusyWait
+                Thread.sleep(10);
+            }
+            // Every channel of the shard on the same connection
+            assertEquals(1, server.subscriptions().size());
+            assertEquals(new HashSet<>(channels), server.subscriptions().get(0));
+            assertEquals(1, transport.shards());
+
+            transport.unsubscribe(channels.get(1));
+            deadline = System.currentTimeMillis() + 2000;
+            while (server.subscriptions().get(0).contains(channels.get(1))) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                //noinspection BusyWait
+                Thread.sleep(10);
+            }
+            assertEquals(RedisConnectionSupervisor.State.CONNECTED, transport.state());
+
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void clusterTransportClosesUnconfirmedSubscription() throws Exception {
+        try (FakeRedisServer server = new FakeRedisServer()) {
+            RedisConfig config = fakeServerConfig(server);
+            config.setHeartbeatInterval(60000);
+            RedisManager manager = RedisManager.instance();
+            RedisClusterTransport transport = new RedisClusterTransport(config, manager.debugger(),
+                    manager.channelNames(), (channel, message) -> {
+            }, cause -> {
+            });
+            String channel = config.getChannelBase() + "#event";
+
+            server.holdSubscriptions();
+            transport.subscribe(channel);
+            transport.start();
+            assertTrue(server.awaitHeldSubscription(2000));
+
+            // Unsubscribed before the shard confirmed the subscription
+            transport.unsubscribe(channel);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (transport.shards() != 0) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                //noinspection BusyWait
+                Thread.sleep(10);
+            }
+            server.releaseSubscriptions();
+
+            // The connection was closed rather than left subscribed
+            deadline = System.currentTimeMillis() + 2000;
+            while (!server.subscriptions().isEmpty()) {
+                assertTrue(System.currentTimeMillis() < deadline);
+                //noinspection BusyWait
+                Thread.sleep(10);
+            }
+
+            transport.shutdown();
+        }
+    }
+
+    @Test
+    public void inMemoryBrokerConnectsNodes() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker(100, TimeUnit.MICROSECONDS);
+        RedisManager first = inMemoryNode(broker, "first");
+        RedisManager second = inMemoryNode(broker, "second");
+
+        // Handled by the TestListener of the second node, the response goes back through the broker
+        SimpleEvent1 event = new SimpleEvent1(1, 2);
+        event.setRedisTarget("second");
+        RedisResponse<Integer> response = first.send(event);
+
+        assertEquals(3, response.getFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(1, response.getPublishFuture().get());
+        assertTrue(first.awaitingResponses().isEmpty());
+
+        first.shutdown();
+        second.shutdown();
+        // The other tests run against a local only manager
+        init();
+    }
+
+    @Test
+    public void shutdownFailsPendingRequests() {
+        InMemoryBroker broker = new InMemoryBroker();
+        RedisManager first = inMemoryNode(broker, "first");
+        RedisManager second = inMemoryNode(broker, "second");
+
+        // Nothing handles it on the second node
+        RedisResponse<Boolean> response = first.send(new PingEvent("second"), 60000);
+        first.shutdown();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> response.getFuture().get());
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        assertTrue(first.awaitingResponses().isEmpty());
+        assertTrue(first.isDisconnected());
+        assertEquals(0, first.timeoutManager().pending());
+
+        second.shutdown();
+        init();
+    }
+
+    @Test
+    public void gatherCollectsEveryNode() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker(100, TimeUnit.MICROSECONDS);
+        RedisManager first = inMemoryNode(broker, "first");
+        RedisManager second = inMemoryNode(broker, "second");
+        RedisManager third = inMemoryNode(broker, "third");
+
+        // Every node, the sender included, responds through its TestListener
+        SimpleEvent1 event = new SimpleEvent1(1, 2);
+        event.setRedisTarget("*");
+        RedisGatherResponse<Integer, Integer> all = first.gather(event, 0, 2000,
+                Collectors.summingInt(Integer::intValue));
+        assertEquals(9, all.getFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(3, all.getReceivers());
+        assertFalse(all.isPartial());
+
+        event = new SimpleEvent1(2, 2);
+        event.setRedisTarget("*");
+        RedisGatherResponse<Integer, List<Integer>> firstTwo = first.gather(event, 2, 2000, Collectors.toList());
+        assertEquals(Arrays.asList(4, 4), firstTwo.getFuture().get(2, TimeUnit.SECONDS));
+        assertTrue(first.awaitingResponses().isEmpty());
+
+        RedisGatherResponse<Integer, List<Integer>> deadline = new RedisGatherResponse<>(1, Integer.class, 0,
+                Collectors.toList());
+        deadline.getPublishFuture().complete(3L);
+        deadline.timeout();
+        assertEquals(Collections.emptyList(), deadline.getFuture().get());
+        assertTrue(deadline.isPartial());
+
+        first.shutdown();
+        second.shutdown();
+        third.shutdown();
+        init();
+    }
+
+    @Test
+    public void coalescedRequestsShareTheirResponse() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker(200, TimeUnit.MILLISECONDS);
+        RedisManager first = inMemoryNode(broker, "first");
+        RedisManager second = inMemoryNode(broker, "second");
+        int handled = CoalescedEvent.handled.get();
+
+        // The identical requests are sent before the first response can arrive
+        RedisResponse<Integer> response = first.send(new CoalescedEvent("second", 21));
+        RedisResponse<Integer> coalesced = first.send(new CoalescedEvent("second", 21));
+        RedisResponse<Integer> impatient = first.send(new CoalescedEvent("second", 21), 20);
+        RedisResponse<Integer> other = first.send(new CoalescedEvent("second", 1));
+
+        assertEquals(response.getId(), coalesced.getId());
+        assertNotEquals(response.getId(), other.getId());
+        // Each follower keeps its own timeout
+        ExecutionException timedOut = assertThrows(ExecutionException.class,
+                () -> impatient.getFuture().get(2, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, timedOut.getCause());
+        assertEquals(42, response.getFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(42, coalesced.getFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(2, other.getFuture().get(2, TimeUnit.SECONDS));
+        assertEquals(handled + 2, CoalescedEvent.handled.get());
+        assertEquals(2, first.metrics().event(CoalescedEvent.class).getCoalesced());
+
+        first.shutdown();
+        second.shutdown();
+        init();
+    }
+
+    @Test
+    public void interestChannelsOnlyReachHandlingNodes() throws Exception {
+        InMemoryBroker broker = new InMemoryBroker();
+        RedisManager first = inMemoryNode(broker, "first", true);
+        RedisManager second = inMemoryNode(broker, "second", true);
+
+        // Both nodes have the TestListener
+        SimpleEvent1 handled = new SimpleEvent1(1, 2);
+        handled.setRedisTarget("*");
+        assertEquals(2, first.send(handled).getPublishFuture().get());
+
+        PingEvent ping = new PingEvent("*");
+        assertEquals(0, first.send(ping, 10).getPublishFuture().get());
+
+        Object listener = new Object() {
+            @RedisEventHandler
+            public void onPing(PingEvent event) {
+                event.respond(true);
+            }
+        };
+        second.redisEventManager().register(listener);
+        assertEquals(true, first.send(new PingEvent("*")).getFuture().get(2, TimeUnit.SECONDS));
+
+        second.redisEventManager().unregister(listener);
+        assertEquals(0, first.send(new PingEvent("*"), 10).getPublishFuture().get());
+
+        first.shutdown();
+        second.shutdown();
+        init();
+    }
+
+    @Test
+    public void interestChannelsSubscribedWhileReconnecting() throws Exception {
+        try (FakeRedisServer server = new FakeRedisServer()) {
+            RedisConfig config = fakeServerConfig(server);
+            config.setInterestChannels(true);
+            RedisManager manager = RedisManager.builder()
+                    .gsonSettings(new GsonSettings())
+                    .redisConfig(config)
+                    .reflections(reflections)
+                    .build();
+            assertTrue(server.awaitSubscribed(config.getChannel(), 1000));
+
+            // The handler is registered after the reconnect sent its SUBSCRIBE, before the server confirmed it
+            server.holdSubscriptions();
+            server.dropConnections();
+            assertTrue(server.awaitHeldSubscription(1000));
+            manager.redisEventManager().register(new Object() {
+                @RedisEventHandler
+                public void onPing(PingEvent event) {
+                    event.respond(true);
+                }
+            });
+            server.releaseSubscriptions();
+
+            assertTrue(server.awaitSubscribed(config.getChannelBase() + "#*#" + PingEvent.class.getName(), 1000));
+            manager.shutdown();
+        }
+
+        init();
+    }
+
+    private static RedisManager inMemoryNode(InMemoryBroker broker, String redisID) {
+        return inMemoryNode(broker, redisID, false);
+    }
+
+    private static RedisManager inMemoryNode(InMemoryBroker broker, String redisID, boolean interestChannels) {
+        RedisConfig config = new RedisConfig();
+        config.setRedisID(redisID);
+        config.setInterestChannels(interestChannels);
+
+        return RedisManager.builder()
+                .gsonSettings(new GsonSettings())
+                .redisConfig(config)
+                .reflections(reflections)
+                .transportFactory(broker::connect)
+                .build();
+    }
+
+    @Test
+    public void outboxSurvivesRestart() throws IOException {
+        Path directory = Files.createTempDirectory("redis-outbox");
+        byte[] channel = "channel".getBytes(StandardCharsets.UTF_8);
+        byte[] payload = new byte[90];
+
+        RedisOutbox outbox = new RedisOutbox(directory, 256, 2, 10, (channels, payloads, count) -> {
+            throw new JedisConnectionException("Offline");
+        }, () -> false);
+        assertTrue(outbox.isEmpty());
+
+        // 2 records per segment
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(outbox.append(channel, payload, 60000));
+        }
+        assertNull(outbox.append(channel, payload, 60000));
+        assertEquals(4, outbox.pending());
+        assertEquals(1, outbox.dropped());
+        outbox.shutdown();
+
+        RedisOutbox recovered = new RedisOutbox(directory, 256, 2, 10, (channels, payloads, count) -> {
+            throw new JedisConnectionException("Offline");
+        }, () -> false);
+        assertEquals(4, recovered.pending());
+        recovered.shutdown();
+    }
+
+    @Test
+    public void outboxReplaysOnReconnect() throws Exception {
+        Path directory = Files.createTempDirectory("redis-outbox");
+        byte[] channel = "channel".getBytes(StandardCharsets.UTF_8);
+        AtomicBoolean connected = new AtomicBoolean();
+
+        // Would only be published on the next flush, a minute later, without the replay
+        RedisOutbox outbox = new RedisOutbox(directory, 256, 2, 60000, (channels, payloads, count) -> {
+            long[] receivers = new long[count];
+            Arrays.fill(receivers, 1);
+            return receivers;
+        }, connected::get);
+
+        CompletableFuture<Long> published = outbox.append(channel, new byte[10], 60000);
+        assertNotNull(published);
+
+        connected.set(true);
+        outbox.replay();
+        assertEquals(1L, published.get(2, TimeUnit.SECONDS));
+        assertTrue(outbox.isEmpty());
+        outbox.shutdown();
+    }
+
+    @Test
+    public void compression() {
+        CompressingRedisCodec codec = new CompressingRedisCodec(new JsonRedisCodec(), 256, 1);
+        codec.init(RedisManager.instance());
+
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            items.add("item-" + (i % 10));
+        }
+        ComplexEvent1 event = new ComplexEvent1(items, "test");
+
+        byte[] data = codec.encode(event);
+        assertEquals(CompressingRedisCodec.MARKER, data[0]);
+        assertTrue(data.length < event.serialize().getBytes(StandardCharsets.UTF_8).length);
+        assertEquals(1, codec.compressedMessages());
+        assertTrue(codec.bytesSaved() > 0);
+
+        RedisEvent<?> decoded = codec.decode(data);
+        assertTrue(decoded instanceof ComplexEvent1);
+        assertEquals(items, ((ComplexEvent1) decoded).getA());
+
+        // Under the threshold
+        SimpleEvent1 smallEvent = new SimpleEvent1(1, 2);
+        byte[] smallData = codec.encode(smallEvent);
+        assertArrayEquals(smallEvent.serialize().getBytes(StandardCharsets.UTF_8), smallData);
+        assertTrue(codec.decode(smallData) instanceof SimpleEvent1);
+        assertEquals(1, codec.compressedMessages());
+    }
+
+    @Test
+    public void typedResponses() {
+        assertEquals(TypeToken.getParameterized(Map.class, String.class,
+                        TypeToken.getParameterized(List.class, Integer.class).getType()).getType(),
+                RedisEventTypes.getResponseType(ScoresEvent.class));
+        assertEquals(Object.class, RedisEventTypes.getResponseType(MapEvent.class));
+
+        ScoresEvent command = new ScoresEvent();
+        command.setId(-200);
+        RedisManager.instance().awaitingResponses().put(command.getId(),
+                new RedisResponse<>(command.getId(), RedisEventTypes.getResponseType(ScoresEvent.class)));
+
+        Map<String, List<Integer>> scores = new HashMap<>();
+        scores.put("test1", Arrays.asList(1, 2));
+        scores.put("test2", Collections.emptyList());
+        ResponseEvent response = new ResponseEvent(command, scores);
+
+        // Inline, not a JSON string inside the event
+        String json = response.serialize();
+        assertTrue(json.contains("\"response\":{"));
+        assertFalse(json.contains("responseClassName"));
+
+        RedisEvent<?> decoded = RedisEvent.deserialize(json);
+        assertTrue(decoded instanceof ResponseEvent);
+        assertEquals(command.getId(), decoded.getId());
+        assertEquals(scores, ((ResponseEvent) decoded).getResponse());
+
+        BinaryRedisCodec codec = new BinaryRedisCodec(new RedisEventTypeRegistry());
+        codec.init(RedisManager.instance());
+        RedisEvent<?> decodedBinary = codec.decode(codec.encode(response));
+        assertTrue(decodedBinary instanceof ResponseEvent);
+        assertEquals(scores, ((ResponseEvent) decodedBinary).getResponse());
+
+        // Nobody is waiting for the response anymore
+        RedisManager.instance().awaitingResponses().remove(command.getId());
+        assertNull(((ResponseEvent) RedisEvent.deserialize(json)).getResponse());
+    }
+
+    @Test
+    public void failedEncodeDoesNotLeakIntoTheNextEvent() {
+        JsonRedisCodec jsonCodec = new JsonRedisCodec();
+        jsonCodec.init(RedisManager.instance());
+        BinaryRedisCodec binaryCodec = new BinaryRedisCodec(new RedisEventTypeRegistry());
+        binaryCodec.init(RedisManager.instance());
+
+        for (RedisCodec codec : Arrays.asList(jsonCodec, binaryCodec)) {
+            assertThrows(RuntimeException.class, () -> codec.encode(new FailingEvent()));
+
+            // Same thread, so the same buffer
+            RedisEvent<?> decoded = codec.decode(codec.encode(new SimpleEvent1(3, 4)));
+            assertTrue(decoded instanceof SimpleEvent1);
+            assertEquals(3, ((SimpleEvent1) decoded).getA());
+            assertEquals(4, ((SimpleEvent1) decoded).getB());
+        }
+    }
+
+    public static abstract class MapEvent<V> extends RedisEvent<Map<String, V>> {
+    }
+
+    public static class ScoresEvent extends MapEvent<List<Integer>> {
+    }
+
+    public static class FailingEvent extends RedisEvent<Boolean> {
+
+        @SuppressWarnings("unused")
+        private String value = "written before the failure";
+        @JsonAdapter(FailingAdapter.class)
+        @SuppressWarnings("unused")
+        private Object failing = new Object();
+    }
+
+    public static class FailingAdapter extends TypeAdapter<Object> {
+
+        @Override
+        public void write(JsonWriter out, Object value) throws IOException {
+            out.value("half of the field");
+            throw new IllegalStateException("Failed halfway");
+        }
+
+        @Override
+        public Object read(JsonReader in) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    @CacheResponse
+    public static class CachedListEvent extends RedisEvent<List<String>> {
+
+        public CachedListEvent() {
+            super(RedisManager.instance().redisConfig().getRedisID());
+        }
+    }
+
+    @CacheResponse
+    public static class RenamedCachedEvent extends RedisEvent<Integer> {
+
+        public RenamedCachedEvent() {
+            super("renamed", 0, "origin", "target");
+        }
+    }
+
 }
@@ -3,6 +3,7 @@ package dev.lightdream.redismanager;
 import dev.lightdream.redismanager.annotation.RedisEventHandler;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class TestListener {
@@ -24,6 +25,25 @@ public class TestListener {
         event.respond(output.toString());
     }
 
+    @RedisEventHandler(autoRegister = true)
+    public void onCoalescedEvent(CoalescedEvent event) {
+        CoalescedEvent.handled.incrementAndGet();
+
+        event.respond(event.getValue() * 2);
+    }
+
+    @RedisEventHandler(autoRegister = true)
+    public void onCachedEvent(CachedEvent event) {
+        CachedEvent.handled.incrementAndGet();
+
+        event.respond(event.getValue() * 2);
+    }
+
+    @RedisEventHandler(autoRegister = true)
+    public void onCachedListEvent(RedisTest.CachedListEvent event) {
+        event.respond(new ArrayList<>(Arrays.asList("a", "b")));
+    }
+
     @RedisEventHandler(autoRegister = true)
     public void onComplexEvent1(ComplexEvent1 event) {
         List<String> output = new ArrayList<>(event.getA());